@@ -0,0 +1,163 @@
+package com.builder;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单元格写值工具
+ * 字符串直接使用setCellValue(String)，不再为每个单元格创建RichTextString；
+ * 开启typed后，Number、Boolean、日期(Date/Calendar/LocalDate/LocalDateTime/Instant/ZonedDateTime/OffsetDateTime)
+ * 写成excel原生的数值、布尔、日期单元格，日期样式按主体样式派生一次后缓存
+ * 一个workbook使用一个，不是线程安全的
+ */
+public class CellValueWriter {
+
+    /**
+     * excel数值的有效位数，超过的数字按文本写入，避免丢失精度
+     */
+    private static final int MAX_NUMERIC_PRECISION = 15;
+
+    private final Workbook workbook;
+    /**
+     * 日期格式
+     */
+    private final String datePattern;
+    /**
+     * 是否按数据类型写入
+     */
+    private final boolean typed;
+    /**
+     * 日期样式缓存 key:主体样式的index
+     */
+    private final Map<Short, CellStyle> dateStyles = new HashMap<>();
+    /**
+     * 日期格式在workbook中的index
+     */
+    private short dateFormat = -1;
+
+    /**
+     * @param workbook    创建日期样式的workbook
+     * @param datePattern 日期格式,例如yyyy-MM-dd HH:mm:ss
+     * @param typed       是否按数据类型写入,false时全部按文本写入
+     */
+    public CellValueWriter(Workbook workbook, String datePattern, boolean typed) {
+        this.workbook = workbook;
+        this.datePattern = datePattern;
+        this.typed = typed;
+    }
+
+    /**
+     * 写入单元格的值和样式
+     *
+     * @param cell  单元格
+     * @param value 值,为null时只设置样式
+     * @param style 主体样式,日期单元格使用由它派生的日期样式
+     */
+    public void write(Cell cell, Object value, CellStyle style) {
+        cell.setCellStyle(style);
+        if (value == null) {
+            return;
+        }
+        if (value instanceof String) {
+            cell.setCellValue((String) value);
+            return;
+        }
+        if (typed) {
+            if (value instanceof Number) {
+                if (writeNumber(cell, (Number) value)) {
+                    return;
+                }
+            } else if (value instanceof Boolean) {
+                cell.setCellValue((Boolean) value);
+                return;
+            } else if (writeDate(cell, value)) {
+                cell.setCellStyle(getDateStyle(style));
+                return;
+            }
+        }
+        cell.setCellValue(value.toString());
+    }
+
+    /**
+     * 写入数值，超出excel精度的数字返回false按文本写入
+     *
+     * @param cell
+     * @param number
+     * @return
+     */
+    private boolean writeNumber(Cell cell, Number number) {
+        double d = number.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return false;
+        }
+        if (number instanceof BigDecimal && ((BigDecimal) number).precision() > MAX_NUMERIC_PRECISION) {
+            return false;
+        }
+        if ((number instanceof Long || number instanceof BigInteger) && Math.abs(d) >= 1e15) {
+            return false;
+        }
+        cell.setCellValue(d);
+        return true;
+    }
+
+    /**
+     * 写入日期，不是日期类型时返回false
+     *
+     * @param cell
+     * @param value
+     * @return
+     */
+    private boolean writeDate(Cell cell, Object value) {
+        if (value instanceof Date) {
+            cell.setCellValue((Date) value);
+        } else if (value instanceof LocalDateTime) {
+            cell.setCellValue((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            cell.setCellValue((LocalDate) value);
+        } else if (value instanceof Calendar) {
+            cell.setCellValue((Calendar) value);
+        } else if (value instanceof Instant) {
+            cell.setCellValue(Date.from((Instant) value));
+        } else if (value instanceof ZonedDateTime) {
+            cell.setCellValue(((ZonedDateTime) value).toLocalDateTime());
+        } else if (value instanceof OffsetDateTime) {
+            cell.setCellValue(((OffsetDateTime) value).toLocalDateTime());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 获取由主体样式派生的日期样式
+     *
+     * @param style 主体样式
+     * @return
+     */
+    private CellStyle getDateStyle(CellStyle style) {
+        CellStyle dateStyle = dateStyles.get(style.getIndex());
+        if (dateStyle == null) {
+            if (dateFormat < 0) {
+                dateFormat = workbook.createDataFormat().getFormat(datePattern);
+            }
+            dateStyle = workbook.createCellStyle();
+            dateStyle.cloneStyleFrom(style);
+            dateStyle.setDataFormat(dateFormat);
+            dateStyles.put(style.getIndex(), dateStyle);
+        }
+        return dateStyle;
+    }
+}
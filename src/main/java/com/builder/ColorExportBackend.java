@@ -0,0 +1,247 @@
+package com.builder;
+
+import com.entity.Column;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 带颜色的xlsx导出后端 支持XSSF和SXSSF(流式导出时传入包装同一个XSSFWorkbook的SXSSFWorkbook，样式共用)
+ * 单元格的样式按行内数据(Map)中的<fieldName>_color选择；自定义颜色规则匹配时使用规则的颜色，
+ * 能写成条件格式的颜色规则在sheet结束时写成sheet级别的条件格式
+ * 列宽按XSSExcelColorTool原来的方式计算：所有sheet共用一份列宽，每个sheet结束时按当前的列宽设置，不使用导出流程计算的列宽
+ * 一次导出使用一个，不是线程安全的
+ */
+public class ColorExportBackend implements ExportBackend {
+
+    private final Workbook workbook;
+    private final HeaderRenderer headerRenderer;
+    private final CellValueWriter cellValueWriter;
+    /**
+     * 有fieldName的列 和导出流程的getLeafColumns相同
+     */
+    private final List<Column> listCol;
+    /**
+     * 颜色名称 -> 样式，没有对应的颜色时返回默认主体样式
+     */
+    private final Function<String, ? extends CellStyle> colorStyles;
+    /**
+     * 自定义颜色规则的颜色 -> 样式
+     */
+    private final Function<IndexedColors, ? extends CellStyle> ruleStyles;
+    private final List<ColorRule> colorRules;
+    /**
+     * 表头和数据的列宽，多个sheet共用
+     */
+    private final ColumnWidthEstimator.Widths widths;
+    /**
+     * 最小列宽(字符数)
+     */
+    private final int minWidth;
+    private final int rowHeight;
+    /**
+     * finish时写出的输出流，为null时只写入workbook，由调用方保存
+     */
+    private final OutputStream out;
+
+    /**
+     * @param workbook        写入的workbook，流式导出时为SXSSFWorkbook
+     * @param headerRenderer  表头渲染工具
+     * @param cellValueWriter 单元格写值工具
+     * @param listCol         有fieldName的列，和导出流程的getLeafColumns相同
+     * @param colorStyles     颜色名称 -> 样式，为null时使用默认主体样式
+     * @param ruleStyles      自定义颜色规则的颜色 -> 样式
+     * @param colorRules      颜色规则
+     * @param widths          表头和数据的列宽，多个sheet共用
+     * @param minWidth        最小列宽(字符数)
+     * @param rowHeight       单元格行高度
+     * @param out             finish时写出的输出流(不会关闭)，为null时不写出
+     */
+    public ColorExportBackend(Workbook workbook, HeaderRenderer headerRenderer, CellValueWriter cellValueWriter,
+                              List<Column> listCol, Function<String, ? extends CellStyle> colorStyles,
+                              Function<IndexedColors, ? extends CellStyle> ruleStyles, List<ColorRule> colorRules,
+                              ColumnWidthEstimator.Widths widths, int minWidth, int rowHeight, OutputStream out) {
+        this.workbook = workbook;
+        this.headerRenderer = headerRenderer;
+        this.cellValueWriter = cellValueWriter;
+        this.listCol = listCol;
+        this.colorStyles = colorStyles;
+        this.ruleStyles = ruleStyles;
+        this.colorRules = colorRules;
+        this.widths = widths;
+        this.minWidth = minWidth;
+        this.rowHeight = rowHeight;
+        this.out = out;
+    }
+
+    @Override
+    public int getMaxRows() {
+        return SheetSplitPolicy.XLSX_MAX_ROWS;
+    }
+
+    @Override
+    public SheetWriter newSheet(String sheetName, List<Column> headerCellList) {
+        Sheet sheet = workbook.createSheet(sheetName);
+        sheet.setDefaultRowHeightInPoints(rowHeight);
+        //流式导出时表头必须全部留在窗口内，否则合并单元格时表头行已经被写出
+        int totalRow = headerCellList.get(0).getTotalRow();
+        if (sheet instanceof SXSSFSheet && totalRow > ((SXSSFWorkbook) workbook).getRandomAccessWindowSize()) {
+            ((SXSSFSheet) sheet).setRandomAccessWindowSize(totalRow);
+        }
+        headerRenderer.render(sheet, headerCellList);
+        return new ColorSheetWriter(sheet, totalRow, headerCellList.get(0).getTotalCol());
+    }
+
+    /**
+     * 写出到输出流，流式导出时删除临时文件
+     *
+     * @throws IOException
+     */
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (out != null) {
+                workbook.write(out);
+                out.flush();
+            }
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+        }
+    }
+
+    private class ColorSheetWriter implements SheetWriter {
+
+        private final Sheet sheet;
+        private final int firstRow;
+        private final int totalCol;
+        private final RowValueReader reader = new RowValueReader(listCol);
+        private final ColorRule.SheetRules rules = new ColorRule.SheetRules(colorRules, listCol);
+        /**
+         * 列号 -> 叶子列下标，同一个列号取最后一个(和导出流程写入的列一致)，没有时为-1
+         */
+        private final int[] leafByCol;
+        /**
+         * 每个叶子列是否需要原始值(有前N名统计或者自定义规则)，只有这些列再读一次原始值
+         */
+        private final boolean[] needsValue;
+        /**
+         * 颜色的key 每一列只拼接一次
+         */
+        private final String[] colorKeys;
+        private Row row;
+        private Object data;
+        /**
+         * 当前行有<fieldName>_color时为这一行的Map，否则为null，写单元格时不再查找颜色
+         */
+        private Map<?, ?> colors;
+        private boolean measure;
+        private int lastRow = -1;
+
+        private ColorSheetWriter(Sheet sheet, int firstRow, int totalCol) {
+            this.sheet = sheet;
+            this.firstRow = firstRow;
+            this.totalCol = totalCol;
+            this.colorKeys = new String[listCol.size()];
+            this.needsValue = new boolean[listCol.size()];
+            int maxCol = totalCol - 1;
+            for (int j = 0; j < listCol.size(); j++) {
+                colorKeys[j] = listCol.get(j).getFieldName() + "_color";
+                needsValue[j] = rules.needsValue(j);
+                maxCol = Math.max(maxCol, listCol.get(j).getCol());
+            }
+            this.leafByCol = new int[maxCol + 1];
+            Arrays.fill(leafByCol, -1);
+            for (int j = 0; j < listCol.size(); j++) {
+                leafByCol[listCol.get(j).getCol()] = j;
+            }
+        }
+
+        @Override
+        public void startRow(int rowIndex) {
+            startRow(rowIndex, null);
+        }
+
+        @Override
+        public void startRow(int rowIndex, Object data) {
+            this.row = sheet.createRow(rowIndex);
+            this.data = data;
+            this.colors = data instanceof Map && hasColor((Map<?, ?>) data) ? (Map<?, ?>) data : null;
+            //只有抽样到的行计算列宽
+            this.measure = widths.sampleRow();
+            this.lastRow = rowIndex;
+        }
+
+        @Override
+        public void writeCell(int col, Object value) {
+            int j = col < leafByCol.length ? leafByCol[col] : -1;
+            IndexedColors ruleColor = null;
+            if (j >= 0 && needsValue[j]) {
+                //颜色规则按原始值判断，没有按数据类型写入时value中的日期已经格式化成文本
+                ruleColor = rules.accept(j, data == null ? value : reader.get(data, j));
+            }
+            CellStyle style;
+            if (ruleColor != null) {
+                style = ruleStyles.apply(ruleColor);
+            } else {
+                Object color = j >= 0 && colors != null ? colors.get(colorKeys[j]) : null;
+                style = colorStyles.apply(color == null ? null : color.toString());
+            }
+            cellValueWriter.write(row.createCell(col), value, style);
+            if (measure && value != null) {
+                widths.merge(col, Math.max(ColumnWidthEstimator.textWidth(value.toString()) + 2, minWidth));
+            }
+        }
+
+        @Override
+        public void endRow() {
+            row = null;
+            data = null;
+            colors = null;
+        }
+
+        /**
+         * 这一行是否有颜色 颜色是按行设置的，每一行都要判断，找到一个就返回
+         *
+         * @param map 行数据
+         * @return
+         */
+        private boolean hasColor(Map<?, ?> map) {
+            if (map.isEmpty()) {
+                return false;
+            }
+            for (String colorKey : colorKeys) {
+                if (map.get(colorKey) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 写入条件格式，按共用的列宽设置这个sheet的列宽
+         *
+         * @param widths 导出流程计算的列宽，不使用
+         */
+        @Override
+        public void finish(ColumnWidthEstimator.Widths widths) {
+            rules.apply(sheet, firstRow, lastRow);
+            for (int col = 0; col < totalCol; col++) {
+                int width = Math.max(ColorExportBackend.this.widths.get(col), minWidth);
+                sheet.setColumnWidth(col, Math.min(width, ColumnWidthEstimator.MAX_CHARS) * 256);
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.builder;
+
+import com.entity.Column;
+import org.apache.poi.ss.usermodel.ConditionalFormattingRule;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.PatternFormatting;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.SheetConditionalFormatting;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * 单元格颜色规则 某一列(按fieldName)的值满足条件时填充颜色
+ * 大于、小于、等于、区间、前N名写成sheet级别的条件格式(conditionalFormatting)，一个sheet的一列只写一条，不再给每个单元格设置样式；
+ * 条件格式公式先把单元格转成数值(--A2)再比较，文本写入的数字也可以比较；前N名在写入时统计出第N大的值，再写成大于等于该值的条件格式
+ * 自定义条件(when)不能写成条件格式，写单元格时逐个判断并使用对应颜色的样式
+ * 不可变，可以在多个导出之间共用
+ */
+public final class ColorRule {
+
+    private enum Type {
+        GREATER_THAN, LESS_THAN, EQUAL, BETWEEN, TOP, CUSTOM
+    }
+
+    private final String fieldName;
+    private final Type type;
+    /**
+     * 比较的值 大于/小于/等于时使用，区间时为下限
+     */
+    private final Object value;
+    /**
+     * 区间的上限
+     */
+    private final Number high;
+    /**
+     * 前N名
+     */
+    private final int top;
+    private final Predicate<Object> predicate;
+    private final IndexedColors color;
+
+    private ColorRule(String fieldName, Type type, Object value, Number high, int top, Predicate<Object> predicate,
+                      IndexedColors color) {
+        if (fieldName == null || color == null) {
+            throw new IllegalArgumentException("颜色规则的fieldName和颜色不能为空");
+        }
+        this.fieldName = fieldName;
+        this.type = type;
+        this.value = value;
+        this.high = high;
+        this.top = top;
+        this.predicate = predicate;
+        this.color = color;
+    }
+
+    /**
+     * 值大于threshold
+     *
+     * @param fieldName 列的fieldName
+     * @param threshold
+     * @param color     填充颜色
+     * @return
+     */
+    public static ColorRule greaterThan(String fieldName, Number threshold, IndexedColors color) {
+        return new ColorRule(fieldName, Type.GREATER_THAN, requireNumber(threshold), null, 0, null, color);
+    }
+
+    /**
+     * 值小于threshold
+     *
+     * @param fieldName 列的fieldName
+     * @param threshold
+     * @param color     填充颜色
+     * @return
+     */
+    public static ColorRule lessThan(String fieldName, Number threshold, IndexedColors color) {
+        return new ColorRule(fieldName, Type.LESS_THAN, requireNumber(threshold), null, 0, null, color);
+    }
+
+    /**
+     * 值等于value 数值按数值比较，其它按文本比较(区分大小写)
+     *
+     * @param fieldName 列的fieldName
+     * @param value
+     * @param color     填充颜色
+     * @return
+     */
+    public static ColorRule equalTo(String fieldName, Object value, IndexedColors color) {
+        if (value == null) {
+            throw new IllegalArgumentException("颜色规则比较的值不能为空");
+        }
+        return new ColorRule(fieldName, Type.EQUAL, value, null, 0, null, color);
+    }
+
+    /**
+     * 值在[low, high]之间
+     *
+     * @param fieldName 列的fieldName
+     * @param low
+     * @param high
+     * @param color     填充颜色
+     * @return
+     */
+    public static ColorRule between(String fieldName, Number low, Number high, IndexedColors color) {
+        return new ColorRule(fieldName, Type.BETWEEN, requireNumber(low), requireNumber(high), 0, null, color);
+    }
+
+    /**
+     * 值在所在sheet的这一列中排前n名(按数值从大到小，并列的都算)
+     *
+     * @param fieldName 列的fieldName
+     * @param n
+     * @param color     填充颜色
+     * @return
+     */
+    public static ColorRule top(String fieldName, int n, IndexedColors color) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("前N名的N必须大于0");
+        }
+        return new ColorRule(fieldName, Type.TOP, null, null, n, null, color);
+    }
+
+    /**
+     * 自定义条件 不能写成条件格式，写单元格时逐个判断
+     *
+     * @param fieldName 列的fieldName
+     * @param predicate 判断单元格的值(读取到的原始值)
+     * @param color     填充颜色
+     * @return
+     */
+    public static ColorRule when(String fieldName, Predicate<Object> predicate, IndexedColors color) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("颜色规则的条件不能为空");
+        }
+        return new ColorRule(fieldName, Type.CUSTOM, null, null, 0, predicate, color);
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public IndexedColors getColor() {
+        return color;
+    }
+
+    /**
+     * 是否可以写成条件格式
+     *
+     * @return
+     */
+    public boolean isNative() {
+        return type != Type.CUSTOM;
+    }
+
+    private static Number requireNumber(Number number) {
+        if (number == null || !Double.isFinite(number.doubleValue())) {
+            throw new IllegalArgumentException("颜色规则比较的值必须是有效的数字");
+        }
+        return number;
+    }
+
+    /**
+     * 条件格式公式 ref为区域左上角单元格的相对引用
+     *
+     * @param ref       例如A5
+     * @param threshold 前N名时第N大的值
+     * @return
+     */
+    private String formula(String ref, double threshold) {
+        String num = "--" + ref;
+        switch (type) {
+            case GREATER_THAN:
+                return "IFERROR(" + num + ">" + literal((Number) value) + ",FALSE)";
+            case LESS_THAN:
+                return "IFERROR(" + num + "<" + literal((Number) value) + ",FALSE)";
+            case EQUAL:
+                if (value instanceof Number) {
+                    return "IFERROR(" + num + "=" + literal((Number) value) + ",FALSE)";
+                }
+                return "EXACT(" + ref + ",\"" + value.toString().replace("\"", "\"\"") + "\")";
+            case BETWEEN:
+                return "IFERROR(AND(" + num + ">=" + literal((Number) value) + "," + num + "<=" + literal(high) + "),FALSE)";
+            case TOP:
+                return "IFERROR(" + num + ">=" + literal(threshold) + ",FALSE)";
+            default:
+                throw new IllegalStateException("自定义条件不能写成条件格式");
+        }
+    }
+
+    private static String literal(Number number) {
+        return new BigDecimal(number.toString()).stripTrailingZeros().toPlainString();
+    }
+
+    private static String literal(double number) {
+        return BigDecimal.valueOf(number).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * 单元格的值转成数值，不能转换时返回NaN 和条件格式中的--一样，文本形式的数字也可以转换
+     *
+     * @param value
+     * @return
+     */
+    private static double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * 一个sheet中的颜色规则 按写入顺序的叶子列下标整理好，写单元格时不再按fieldName查找
+     * 写完数据后调用apply把条件格式写入sheet，不是线程安全的
+     */
+    static final class SheetRules {
+
+        /**
+         * 条件格式规则和对应的列
+         */
+        private final List<ColorRule> nativeRules = new ArrayList<>();
+        private final List<Column> nativeColumns = new ArrayList<>();
+        /**
+         * 前N名的统计 和nativeRules一一对应，不是前N名时为null
+         */
+        private final List<TopValues> tops = new ArrayList<>();
+        /**
+         * 每个叶子列的前N名统计，按叶子列下标取，没有时为null
+         */
+        private final TopValues[][] topsByColumn;
+        /**
+         * 每个叶子列的自定义规则，按叶子列下标取，没有时为null
+         */
+        private final ColorRule[][] cellRules;
+
+        /**
+         * @param rules   颜色规则
+         * @param listCol 叶子列，顺序和写单元格的顺序一致
+         */
+        SheetRules(List<ColorRule> rules, List<Column> listCol) {
+            this.topsByColumn = new TopValues[listCol.size()][];
+            this.cellRules = new ColorRule[listCol.size()][];
+            for (int j = 0; j < listCol.size(); j++) {
+                Column column = listCol.get(j);
+                List<ColorRule> custom = null;
+                List<TopValues> columnTops = null;
+                if (rules != null) {
+                    for (ColorRule rule : rules) {
+                        if (!rule.fieldName.equals(column.getFieldName())) {
+                            continue;
+                        }
+                        if (rule.isNative()) {
+                            if (contains(rule, column.getCol())) {
+                                //有子节点的列也有fieldName时和子节点在同一列，同一列的同一条规则只写一次
+                                continue;
+                            }
+                            TopValues queue = rule.type == Type.TOP ? new TopValues(rule.top) : null;
+                            nativeRules.add(rule);
+                            nativeColumns.add(column);
+                            tops.add(queue);
+                            if (queue != null) {
+                                if (columnTops == null) {
+                                    columnTops = new ArrayList<>();
+                                }
+                                columnTops.add(queue);
+                            }
+                        } else {
+                            if (custom == null) {
+                                custom = new ArrayList<>();
+                            }
+                            custom.add(rule);
+                        }
+                    }
+                }
+                cellRules[j] = custom == null ? null : custom.toArray(new ColorRule[0]);
+                topsByColumn[j] = columnTops == null ? null : columnTops.toArray(new TopValues[0]);
+            }
+        }
+
+        private boolean contains(ColorRule rule, int col) {
+            for (int i = 0; i < nativeRules.size(); i++) {
+                if (nativeRules.get(i) == rule && nativeColumns.get(i).getCol() == col) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 这一列是否需要单元格的原始值 有前N名统计或者自定义规则时需要
+         *
+         * @param index 叶子列下标
+         * @return
+         */
+        boolean needsValue(int index) {
+            return topsByColumn[index] != null || cellRules[index] != null;
+        }
+
+        /**
+         * 记录一个单元格的值，返回自定义规则匹配的颜色
+         *
+         * @param index 叶子列下标
+         * @param value 单元格的原始值
+         * @return 没有匹配的自定义规则时返回null
+         */
+        IndexedColors accept(int index, Object value) {
+            TopValues[] columnTops = topsByColumn[index];
+            if (columnTops != null) {
+                double d = toNumber(value);
+                if (!Double.isNaN(d)) {
+                    for (TopValues topValues : columnTops) {
+                        topValues.offer(d);
+                    }
+                }
+            }
+            ColorRule[] custom = cellRules[index];
+            if (custom != null) {
+                for (ColorRule rule : custom) {
+                    if (rule.predicate.test(value)) {
+                        return rule.color;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 把条件格式写入sheet
+         *
+         * @param sheet    工作表
+         * @param firstRow 第一行数据
+         * @param lastRow  最后一行数据，小于firstRow时没有数据不写入
+         */
+        void apply(Sheet sheet, int firstRow, int lastRow) {
+            if (lastRow < firstRow || nativeRules.isEmpty()) {
+                return;
+            }
+            SheetConditionalFormatting formatting = sheet.getSheetConditionalFormatting();
+            for (int i = 0; i < nativeRules.size(); i++) {
+                ColorRule rule = nativeRules.get(i);
+                TopValues queue = tops.get(i);
+                if (queue != null && queue.values.isEmpty()) {
+                    continue;
+                }
+                int col = nativeColumns.get(i).getCol();
+                String ref = new CellReference(firstRow, col, false, false).formatAsString();
+                ConditionalFormattingRule cfRule = formatting.createConditionalFormattingRule(
+                        rule.formula(ref, queue == null ? 0 : queue.values.peek()));
+                PatternFormatting fill = cfRule.createPatternFormatting();
+                fill.setFillBackgroundColor(rule.color.getIndex());
+                fill.setFillPattern(FillPatternType.SOLID_FOREGROUND.getCode());
+                formatting.addConditionalFormatting(
+                        new CellRangeAddress[]{new CellRangeAddress(firstRow, lastRow, col, col)}, cfRule);
+            }
+        }
+    }
+
+    /**
+     * 一列中最大的n个值 堆顶为第n大的值
+     */
+    private static final class TopValues {
+
+        private final int n;
+        private final PriorityQueue<Double> values = new PriorityQueue<>();
+
+        private TopValues(int n) {
+            this.n = n;
+        }
+
+        private void offer(double d) {
+            if (values.size() < n) {
+                values.add(d);
+            } else if (d > values.peek()) {
+                values.poll();
+                values.add(d);
+            }
+        }
+    }
+}
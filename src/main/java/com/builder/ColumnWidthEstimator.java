@@ -0,0 +1,293 @@
+package com.builder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 列宽估算策略 决定哪些数据行参与列宽计算
+ * all:       每一行都计算
+ * firstRows: 只计算前n行
+ * sampled:   蓄水池抽样，前n行全部计算，之后第i行按n/i的概率计算，计算的行数约为n*(1+ln(总行数/n))，
+ *            百万行的数据也只计算很少的行，又能覆盖到后面的数据
+ * 每一行写入时就决定是否计算，不需要回头读取已经写出的行，SXSSF等流式导出也可以使用
+ * 字符宽度按Unicode East Asian Width中的宽字符(W)和全角字符(F)算2个字符，其它算1个字符
+ * 不可变，可以在多个导出之间共用
+ */
+public class ColumnWidthEstimator {
+
+    /**
+     * 默认抽样行数
+     */
+    public static final int DEFAULT_SAMPLE_ROWS = 10000;
+    /**
+     * excel列宽的最大字符数
+     */
+    public static final int MAX_CHARS = 255;
+
+    /**
+     * 宽字符(W)和全角字符(F)的范围 {开始, 结束}，按开始排序
+     */
+    private static final int[] WIDE_RANGES = {
+            0x1100, 0x115F,   // 韩文字母
+            0x231A, 0x231B,
+            0x2329, 0x232A,
+            0x23E9, 0x23EC,
+            0x23F0, 0x23F0,
+            0x23F3, 0x23F3,
+            0x25FD, 0x25FE,
+            0x2614, 0x2615,
+            0x2648, 0x2653,
+            0x267F, 0x267F,
+            0x2693, 0x2693,
+            0x26A1, 0x26A1,
+            0x26AA, 0x26AB,
+            0x26BD, 0x26BE,
+            0x26C4, 0x26C5,
+            0x26CE, 0x26CE,
+            0x26D4, 0x26D4,
+            0x26EA, 0x26EA,
+            0x26F2, 0x26F3,
+            0x26F5, 0x26F5,
+            0x26FA, 0x26FA,
+            0x26FD, 0x26FD,
+            0x2705, 0x2705,
+            0x270A, 0x270B,
+            0x2728, 0x2728,
+            0x274C, 0x274C,
+            0x274E, 0x274E,
+            0x2753, 0x2755,
+            0x2757, 0x2757,
+            0x2795, 0x2797,
+            0x27B0, 0x27B0,
+            0x27BF, 0x27BF,
+            0x2B1B, 0x2B1C,
+            0x2B50, 0x2B50,
+            0x2B55, 0x2B55,
+            0x2E80, 0x303E,   // CJK部首、康熙部首、CJK符号和标点
+            0x3041, 0x33FF,   // 平假名、片假名、注音、韩文兼容字母、CJK笔画、带圈字符、CJK兼容
+            0x3400, 0x4DBF,   // CJK扩展A
+            0x4E00, 0x9FFF,   // CJK统一汉字
+            0xA000, 0xA4CF,   // 彝文
+            0xA960, 0xA97F,   // 韩文字母扩展A
+            0xAC00, 0xD7A3,   // 韩文音节
+            0xF900, 0xFAFF,   // CJK兼容汉字
+            0xFE10, 0xFE19,   // 竖排标点
+            0xFE30, 0xFE6F,   // CJK兼容形式、小写变体
+            0xFF00, 0xFF60,   // 全角ASCII、全角标点
+            0xFFE0, 0xFFE6,   // 全角符号
+            0x16FE0, 0x16FE4,
+            0x17000, 0x18CFF, // 西夏文
+            0x1B000, 0x1B2FF, // 假名补充
+            0x1F004, 0x1F004,
+            0x1F0CF, 0x1F0CF,
+            0x1F18E, 0x1F18E,
+            0x1F191, 0x1F19A,
+            0x1F200, 0x1F251, // 带圈表意文字补充
+            0x1F260, 0x1F265,
+            0x1F300, 0x1F64F, // 表情符号
+            0x1F680, 0x1F6FF,
+            0x1F7E0, 0x1F7EB,
+            0x1F90C, 0x1F9FF,
+            0x1FA70, 0x1FAFF,
+            0x20000, 0x2FFFD, // CJK扩展B-F
+            0x30000, 0x3FFFD  // CJK扩展G
+    };
+
+    private static final ColumnWidthEstimator ALL = new ColumnWidthEstimator(0, false, 0);
+
+    /**
+     * 参与计算的行数，all时为0
+     */
+    private final int sampleRows;
+    /**
+     * 超过sampleRows后是否继续按概率抽样
+     */
+    private final boolean reservoir;
+    /**
+     * 抽样的随机数种子，同样的数据得到同样的列宽
+     */
+    private final long seed;
+
+    private ColumnWidthEstimator(int sampleRows, boolean reservoir, long seed) {
+        this.sampleRows = sampleRows;
+        this.reservoir = reservoir;
+        this.seed = seed;
+    }
+
+    /**
+     * 每一行都计算
+     *
+     * @return
+     */
+    public static ColumnWidthEstimator all() {
+        return ALL;
+    }
+
+    /**
+     * 只计算前n行
+     *
+     * @param n
+     * @return
+     */
+    public static ColumnWidthEstimator firstRows(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("计算列宽的行数必须大于0");
+        }
+        return new ColumnWidthEstimator(n, false, 0);
+    }
+
+    /**
+     * 蓄水池抽样 前n行全部计算，之后按n/i的概率计算
+     *
+     * @param n
+     * @return
+     */
+    public static ColumnWidthEstimator sampled(int n) {
+        return sampled(n, 0);
+    }
+
+    /**
+     * 蓄水池抽样 前n行全部计算，之后按n/i的概率计算
+     *
+     * @param n
+     * @param seed 随机数种子
+     * @return
+     */
+    public static ColumnWidthEstimator sampled(int n, long seed) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("抽样的行数必须大于0");
+        }
+        return new ColumnWidthEstimator(n, true, seed);
+    }
+
+    /**
+     * 开始计算一组列宽
+     *
+     * @return
+     */
+    public Widths start() {
+        return new Widths(this);
+    }
+
+    /**
+     * 一个字符占几个字符宽度
+     *
+     * @param codePoint
+     * @return 宽字符和全角字符为2，其它为1
+     */
+    public static int charWidth(int codePoint) {
+        if (codePoint < WIDE_RANGES[0]) {
+            return 1;
+        }
+        int low = 0;
+        int high = WIDE_RANGES.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (codePoint < WIDE_RANGES[mid * 2]) {
+                high = mid - 1;
+            } else if (codePoint > WIDE_RANGES[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return 2;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 文本占几个字符宽度 超过excel列宽的最大字符数后不再计算
+     *
+     * @param text
+     * @return
+     */
+    public static int textWidth(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int width = 0;
+        for (int i = 0; i < text.length() && width <= MAX_CHARS; ) {
+            int codePoint = Character.codePointAt(text, i);
+            width += charWidth(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return width;
+    }
+
+    /**
+     * 一组列宽 每一列的最大宽度存放在int数组中，不是线程安全的
+     * 写每一行数据前调用sampleRow()，返回true时把这一行单元格的宽度merge进来
+     */
+    public static class Widths {
+
+        private final ColumnWidthEstimator estimator;
+        private final Random random;
+        private int[] widths = new int[16];
+        /**
+         * 已写入的数据行数
+         */
+        private long rows;
+        /**
+         * 参与计算的数据行数
+         */
+        private long measuredRows;
+
+        private Widths(ColumnWidthEstimator estimator) {
+            this.estimator = estimator;
+            this.random = estimator.reservoir ? new Random(estimator.seed) : null;
+        }
+
+        /**
+         * 下一行数据是否参与计算
+         *
+         * @return
+         */
+        public boolean sampleRow() {
+            rows++;
+            boolean sample;
+            if (estimator.sampleRows <= 0 || rows <= estimator.sampleRows) {
+                sample = true;
+            } else if (estimator.reservoir) {
+                sample = random.nextDouble() * rows < estimator.sampleRows;
+            } else {
+                sample = false;
+            }
+            if (sample) {
+                measuredRows++;
+            }
+            return sample;
+        }
+
+        /**
+         * 记录一列的宽度，保留最大值
+         *
+         * @param col   第几列
+         * @param width 宽度(字符数)
+         */
+        public void merge(int col, int width) {
+            if (col >= widths.length) {
+                widths = Arrays.copyOf(widths, Math.max(widths.length * 2, col + 1));
+            }
+            if (width > widths[col]) {
+                widths[col] = width;
+            }
+        }
+
+        /**
+         * 一列的宽度
+         *
+         * @param col 第几列
+         * @return 没有记录时为0
+         */
+        public int get(int col) {
+            return col < widths.length ? widths[col] : 0;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getMeasuredRows() {
+            return measuredRows;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.builder;
+
+import com.entity.Column;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译好的表头 保存布局计算后的坐标(tree结构)、叶子列和合并单元格区域
+ * 按表头定义(每一列的id/pid/content/fieldName和rootid)的内容缓存，LRU淘汰，
+ * 同样的表头再次导出时直接取缓存，不再重新计算布局
+ * 内部数据创建后不再修改，对外返回的Column都是副本，线程安全
+ */
+public final class CompiledHeader {
+
+    /**
+     * 默认缓存的表头个数
+     */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static int cacheSize = DEFAULT_CACHE_SIZE;
+
+    private static final Map<Key, CompiledHeader> CACHE = new LruCache();
+
+    /**
+     * 布局后的表头 tree结构，不对外暴露
+     */
+    private final List<Column> columns;
+    /**
+     * 叶子列(有fieldName的列)，顺序和导出时写单元格的顺序一致
+     */
+    private final List<Column> leafColumns;
+    /**
+     * 合并单元格区域 {开始行, 结束行, 开始列, 结束列}
+     */
+    private final int[][] mergedRegions;
+    private final int totalRow;
+    private final int totalCol;
+
+    private CompiledHeader(List<Column> columns) {
+        this.columns = columns;
+        List<Column> leaves = new ArrayList<>();
+        List<int[]> regions = new ArrayList<>();
+        collect(columns, leaves, regions);
+        this.leafColumns = leaves;
+        this.mergedRegions = regions.toArray(new int[0][]);
+        this.totalRow = columns.isEmpty() ? 0 : columns.get(0).getTotalRow();
+        this.totalCol = columns.isEmpty() ? 0 : columns.get(0).getTotalCol();
+    }
+
+    /**
+     * 编译表头，同样的表头定义直接返回缓存
+     *
+     * @param list   所有的list数据，一条一条(只读取id/pid/content/fieldName)
+     * @param rootid 根节点id
+     * @return
+     */
+    public static CompiledHeader compile(List<Column> list, String rootid) {
+        Key key = new Key(list, rootid);
+        synchronized (CACHE) {
+            CompiledHeader header = CACHE.get(key);
+            if (header != null) {
+                return header;
+            }
+        }
+        //在锁外计算布局，使用副本，不修改传入的数据
+        List<Column> copy = new ArrayList<>(list.size());
+        for (Column column : list) {
+            Column c = new Column();
+            c.setId(column.getId());
+            c.setPid(column.getPid());
+            c.setContent(column.getContent());
+            c.setFieldName(column.getFieldName());
+            copy.add(c);
+        }
+        CompiledHeader header = new CompiledHeader(HeaderLayout.layout(copy, rootid));
+        synchronized (CACHE) {
+            CompiledHeader cached = CACHE.putIfAbsent(key, header);
+            return cached == null ? header : cached;
+        }
+    }
+
+    /**
+     * 设置缓存的表头个数，小于等于0时不缓存
+     *
+     * @param size
+     */
+    public static void setCacheSize(int size) {
+        synchronized (CACHE) {
+            cacheSize = Math.max(0, size);
+            if (CACHE.size() > cacheSize) {
+                //按访问顺序保留最近使用的
+                List<Key> keys = new ArrayList<>(CACHE.keySet());
+                for (int i = 0; i < keys.size() - cacheSize; i++) {
+                    CACHE.remove(keys.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * 布局后的表头 tree结构，每次返回新的副本，可以直接传给exportExcel
+     *
+     * @return
+     */
+    public List<Column> getColumns() {
+        List<Column> list = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            list.add(copyTree(column));
+        }
+        return list;
+    }
+
+    /**
+     * 叶子列(有fieldName的列)的副本，顺序和导出时写单元格的顺序一致
+     *
+     * @return
+     */
+    public List<Column> getLeafColumns() {
+        List<Column> list = new ArrayList<>(leafColumns.size());
+        for (Column column : leafColumns) {
+            Column c = copy(column);
+            c.setCellList(Collections.<Column>emptyList());
+            list.add(c);
+        }
+        return list;
+    }
+
+    /**
+     * 合并单元格区域(只包含超过一个单元格的区域)
+     *
+     * @return
+     */
+    public List<CellRangeAddress> getMergedRegions() {
+        List<CellRangeAddress> list = new ArrayList<>(mergedRegions.length);
+        for (int[] region : mergedRegions) {
+            list.add(new CellRangeAddress(region[0], region[1], region[2], region[3]));
+        }
+        return list;
+    }
+
+    public int getTotalRow() {
+        return totalRow;
+    }
+
+    public int getTotalCol() {
+        return totalCol;
+    }
+
+    /**
+     * 按导出时的顺序收集叶子列和合并单元格区域
+     *
+     * @param list
+     * @param leaves
+     * @param regions
+     */
+    private static void collect(List<Column> list, List<Column> leaves, List<int[]> regions) {
+        for (Column column : list) {
+            if (column.getFieldName() != null) {
+                leaves.add(column);
+            }
+            int r = column.getRow();
+            int c = column.getCol();
+            int endR = column.getRLen() > 0 ? r + column.getRLen() - 1 : r;
+            int endC = column.getCLen() > 0 ? c + column.getCLen() - 1 : c;
+            if (endR > r || endC > c) {
+                regions.add(new int[]{r, endR, c, endC});
+            }
+            collect(column.getCellList(), leaves, regions);
+        }
+    }
+
+    private static Column copyTree(Column column) {
+        Column c = copy(column);
+        List<Column> children = new ArrayList<>(column.getCellList().size());
+        for (Column child : column.getCellList()) {
+            children.add(copyTree(child));
+        }
+        c.setCellList(children);
+        return c;
+    }
+
+    private static Column copy(Column column) {
+        Column c = new Column();
+        c.setId(column.getId());
+        c.setPid(column.getPid());
+        c.setContent(column.getContent());
+        c.setFieldName(column.getFieldName());
+        c.setTotalRow(column.getTotalRow());
+        c.setTotalCol(column.getTotalCol());
+        c.setRow(column.getRow());
+        c.setCol(column.getCol());
+        c.setRLen(column.getRLen());
+        c.setCLen(column.getCLen());
+        c.setHasChildren(column.isHasChildren());
+        c.setTreeStep(column.getTreeStep());
+        return c;
+    }
+
+    /**
+     * 缓存key 表头定义的内容(rootid和每一列的id/pid/content/fieldName)
+     * 先比较hash，hash相同再逐个比较内容，不会因为hash冲突取错表头
+     */
+    private static final class Key {
+
+        private final String[] values;
+        private final int hash;
+
+        private Key(List<Column> list, String rootid) {
+            values = new String[list.size() * 4 + 1];
+            values[0] = rootid;
+            int i = 1;
+            for (Column column : list) {
+                values[i++] = column.getId();
+                values[i++] = column.getPid();
+                values[i++] = column.getContent();
+                values[i++] = column.getFieldName();
+            }
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(values, ((Key) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的缓存 超过cacheSize时淘汰最久没有使用的表头，在synchronized (CACHE)中使用
+     */
+    private static final class LruCache extends LinkedHashMap<Key, CompiledHeader> {
+
+        private static final long serialVersionUID = 1L;
+
+        private LruCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CompiledHeader> eldest) {
+            return size() > cacheSize;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * CSV/TSV导出后端 不创建workbook，行内数据经过ExportPipeline读取后直接写成分隔文本
+ * 多级表头可以按excel的样子写成多行(合并单元格只在左上角写内容)，也可以每一列写一个用/连接的路径名，例如 角色加部门/角色
+ * 字段包含分隔符、双引号、换行时用双引号包起来，双引号写两次(RFC 4180)，行之间用\r\n分隔
+ * 所有内容先写进char缓冲区，满了以后用CharsetEncoder编码成UTF-8写入WritableByteChannel
+ * 拆分策略拆出的多个sheet在同一个文件中连续写入，表头只写一次
+ * 一次导出使用一个，不是线程安全的
+ */
+public class CsvExportBackend implements ExportBackend {
+
+    /**
+     * 表头的写法
+     */
+    public enum HeaderMode {
+        /**
+         * 和excel一样写成多行，合并单元格只在左上角写内容
+         */
+        ROWS,
+        /**
+         * 只写一行，每一列为从根节点到叶子节点的路径名，用/连接
+         */
+        PATH,
+        /**
+         * 不写表头
+         */
+        NONE
+    }
+
+    /**
+     * 路径名的分隔符
+     */
+    public static final String PATH_SEPARATOR = "/";
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final WritableByteChannel channel;
+    private final char delimiter;
+    private final HeaderMode headerMode;
+    /**
+     * 按数据类型写入时日期仍然是日期对象，在这里格式化
+     */
+    private final DateFormats dateFormats;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final char[] buffer = new char[16 * 1024];
+    private final ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+    private int pos;
+    /**
+     * 是否在文件开头写入UTF-8的BOM，excel打开时才能识别中文
+     */
+    private boolean bom;
+    private boolean headerWritten;
+    /**
+     * 表头的总列数，每一行都补齐到这个列数
+     */
+    private int totalCol;
+    /**
+     * 当前行下一个要写的列
+     */
+    private int nextCol;
+    private final CsvSheet sheet = new CsvSheet();
+
+    /**
+     * @param channel     输出通道，finish后不会关闭
+     * @param delimiter   分隔符，CSV为逗号，TSV为制表符
+     * @param headerMode  表头的写法
+     * @param dateFormats 日期格式化
+     */
+    public CsvExportBackend(WritableByteChannel channel, char delimiter, HeaderMode headerMode, DateFormats dateFormats) {
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("分隔符不能是双引号或换行:" + delimiter);
+        }
+        this.channel = channel;
+        this.delimiter = delimiter;
+        this.headerMode = headerMode == null ? HeaderMode.ROWS : headerMode;
+        this.dateFormats = dateFormats == null ? DateFormats.defaults() : dateFormats;
+    }
+
+    /**
+     * 逗号分隔
+     *
+     * @param out        输出流，finish后不会关闭
+     * @param headerMode 表头的写法
+     * @return
+     */
+    public static CsvExportBackend csv(OutputStream out, HeaderMode headerMode) {
+        return new CsvExportBackend(Channels.newChannel(out), ',', headerMode, DateFormats.defaults());
+    }
+
+    /**
+     * 制表符分隔
+     *
+     * @param out        输出流，finish后不会关闭
+     * @param headerMode 表头的写法
+     * @return
+     */
+    public static CsvExportBackend tsv(OutputStream out, HeaderMode headerMode) {
+        return new CsvExportBackend(Channels.newChannel(out), '\t', headerMode, DateFormats.defaults());
+    }
+
+    /**
+     * 在文件开头写入UTF-8的BOM 用excel直接打开时需要，必须在写入表头之前设置
+     *
+     * @param bom
+     * @return this
+     */
+    public CsvExportBackend setBom(boolean bom) {
+        if (headerWritten) {
+            throw new IllegalStateException("已经开始写入，不能再设置BOM");
+        }
+        this.bom = bom;
+        return this;
+    }
+
+    /**
+     * 分隔文本没有行数限制
+     *
+     * @return
+     */
+    @Override
+    public int getMaxRows() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public SheetWriter newSheet(String sheetName, List<Column> headerCellList) throws IOException {
+        if (!headerWritten) {
+            headerWritten = true;
+            totalCol = headerCellList.get(0).getTotalCol();
+            if (bom) {
+                bytes.put(UTF8_BOM);
+            }
+            writeHead(headerCellList);
+        }
+        return sheet;
+    }
+
+    /**
+     * 写出缓冲区中剩余的内容，不关闭输出通道
+     *
+     * @throws IOException
+     */
+    @Override
+    public void finish() throws IOException {
+        flushBuffer(true);
+    }
+
+    private void writeHead(List<Column> headerCellList) throws IOException {
+        switch (headerMode) {
+            case ROWS: {
+                int totalRow = headerCellList.get(0).getTotalRow();
+                String[][] grid = new String[totalRow][totalCol];
+                fillGrid(headerCellList, grid);
+                for (String[] line : grid) {
+                    writeLine(line);
+                }
+                break;
+            }
+            case PATH: {
+                String[] line = new String[totalCol];
+                fillPath(headerCellList, null, line);
+                writeLine(line);
+                break;
+            }
+            default:
+        }
+    }
+
+    /**
+     * 把表头内容放到对应的坐标上 合并单元格只在左上角
+     *
+     * @param cellList 表头数据
+     * @param grid     表头的表格
+     */
+    private static void fillGrid(List<Column> cellList, String[][] grid) {
+        for (Column column : cellList) {
+            int r = column.getRow();
+            int c = column.getCol();
+            if (r < grid.length && c < grid[r].length) {
+                grid[r][c] = column.getContent();
+            }
+            if (column.isHasChildren()) {
+                fillGrid(column.getCellList(), grid);
+            }
+        }
+    }
+
+    /**
+     * 每一列的路径名 有子节点的列和子节点在同一列时使用子节点的路径
+     *
+     * @param cellList 表头数据
+     * @param parent   父节点的路径，根节点为null
+     * @param line     每一列的路径名
+     */
+    private static void fillPath(List<Column> cellList, String parent, String[] line) {
+        for (Column column : cellList) {
+            String content = column.getContent();
+            String path = content == null || content.isEmpty() ? parent
+                    : parent == null ? content : parent + PATH_SEPARATOR + content;
+            if (column.isHasChildren()) {
+                fillPath(column.getCellList(), path, line);
+                continue;
+            }
+            int end = Math.min(column.getCol() + Math.max(column.getCLen(), 1), line.length);
+            for (int c = column.getCol(); c < end; c++) {
+                line[c] = path;
+            }
+        }
+    }
+
+    private void writeLine(String[] line) throws IOException {
+        sheet.startRow(0);
+        for (int c = 0; c < line.length; c++) {
+            sheet.writeCell(c, line[c]);
+        }
+        sheet.endRow();
+    }
+
+    /**
+     * 单元格的值转成文本
+     *
+     * @param value
+     * @return
+     */
+    private String toText(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (DateFormats.isDate(value)) {
+            return dateFormats.format(value);
+        }
+        return value.toString();
+    }
+
+    /**
+     * 写入一个字段 包含分隔符、双引号、换行时用双引号包起来
+     *
+     * @param s
+     * @throws IOException
+     */
+    private void appendField(String s) throws IOException {
+        int len = s.length();
+        boolean quote = false;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == delimiter || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            append(s);
+            return;
+        }
+        append('"');
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        append('"');
+    }
+
+    // ==================== 缓冲区 ====================
+
+    private void append(char c) throws IOException {
+        if (pos == buffer.length) {
+            flushBuffer(false);
+        }
+        buffer[pos++] = c;
+    }
+
+    private void append(String s) throws IOException {
+        int len = s.length();
+        int start = 0;
+        while (start < len) {
+            if (pos == buffer.length) {
+                flushBuffer(false);
+            }
+            int n = Math.min(len - start, buffer.length - pos);
+            s.getChars(start, start + n, buffer, pos);
+            pos += n;
+            start += n;
+        }
+    }
+
+    /**
+     * 把缓冲区编码后写入输出通道 缓冲区末尾不成对的代理字符留到下一次
+     *
+     * @param endOfInput 是否已经写完
+     * @throws IOException
+     */
+    private void flushBuffer(boolean endOfInput) throws IOException {
+        CharBuffer in = CharBuffer.wrap(buffer, 0, pos);
+        while (true) {
+            CoderResult result = encoder.encode(in, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        int remaining = in.remaining();
+        System.arraycopy(buffer, in.position(), buffer, 0, remaining);
+        pos = remaining;
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            encoder.reset();
+        }
+        drain();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /**
+     * 所有sheet共用一个，行号不影响写入
+     */
+    private class CsvSheet implements SheetWriter {
+
+        @Override
+        public void startRow(int rowIndex) {
+            nextCol = 0;
+        }
+
+        @Override
+        public void writeCell(int col, Object value) throws IOException {
+            for (; nextCol < col; nextCol++) {
+                if (nextCol > 0) {
+                    append(delimiter);
+                }
+            }
+            if (col > 0) {
+                append(delimiter);
+            }
+            if (value != null) {
+                appendField(toText(value));
+            }
+            nextCol = col + 1;
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            for (; nextCol < totalCol; nextCol++) {
+                if (nextCol > 0) {
+                    append(delimiter);
+                }
+            }
+            append('\r');
+            append('\n');
+        }
+
+        @Override
+        public void finish(ColumnWidthEstimator.Widths widths) {
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.builder;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 日期格式化 按格式字符串、时区和Locale缓存预先编译好的DateTimeFormatter，同一个格式在整个应用中只编译一次
+ * 支持Date(包括java.sql.Date/Timestamp)、Calendar、LocalDate、LocalDateTime、LocalTime、Instant、ZonedDateTime、OffsetDateTime
+ * 格式中的每个字母在DateTimeFormatter和SimpleDateFormat中含义都相同时才使用DateTimeFormatter，
+ * 否则(例如u、Y、w、SS)以及1582-10-15(格里历启用)之前、9999年之后的日期使用每个线程一个的SimpleDateFormat，结果和SimpleDateFormat一致
+ * 没有指定时区/Locale时每次格式化取当时的默认值；没有时区的值按这个时区转换
+ * 不可变，线程安全，导出、导入和多线程生成sheet时可以共用
+ */
+public final class DateFormats {
+
+    /**
+     * 默认日期格式
+     */
+    public static final String DEFAULT_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    /**
+     * 导入时日期单元格的格式
+     */
+    public static final String IMPORT_PATTERN = "yyyy-MM-dd";
+
+    /**
+     * SimpleDateFormat默认的格里历启用时间 1582-10-15T00:00:00Z，之前的日期按儒略历
+     */
+    private static final Instant GREGORIAN_CUTOVER = Instant.ofEpochMilli(-12219292800000L);
+
+    /**
+     * 超过4位的年份DateTimeFormatter会加上+号
+     */
+    private static final int MAX_YEAR = 9999;
+
+    private static final ConcurrentMap<List<Object>, DateFormats> CACHE = new ConcurrentHashMap<>();
+
+    private final String pattern;
+    /**
+     * null为每次格式化时取默认时区
+     */
+    private final ZoneId zone;
+    /**
+     * null为每次格式化时取默认Locale
+     */
+    private final Locale locale;
+    /**
+     * 格式和SimpleDateFormat不完全相同时为null
+     */
+    private final DateTimeFormatter formatter;
+    /**
+     * 兼容setSdf时传入的SimpleDateFormat(复制的)，每个线程复制一个使用，时区、Locale等设置都保留
+     */
+    private final SimpleDateFormat template;
+    private final ThreadLocal<LegacyFormat> legacy = new ThreadLocal<>();
+
+    private DateFormats(String pattern, ZoneId zone, Locale locale, SimpleDateFormat template) {
+        this.pattern = pattern;
+        this.zone = zone;
+        this.locale = locale;
+        this.template = template;
+        if (template != null) {
+            this.formatter = null;
+            return;
+        }
+        //两个都不支持的格式抛出IllegalArgumentException
+        new SimpleDateFormat(pattern);
+        DateTimeFormatter f = null;
+        if (isCompatible(pattern)) {
+            try {
+                f = DateTimeFormatter.ofPattern(pattern, locale == null ? Locale.getDefault(Locale.Category.FORMAT) : locale);
+            } catch (IllegalArgumentException e) {
+                f = null;
+            }
+        }
+        this.formatter = f;
+    }
+
+    /**
+     * 获取某个格式的日期格式化，使用默认的时区和Locale，同样的格式返回同一个对象
+     *
+     * @param pattern 日期格式,例如yyyy-MM-dd HH:mm:ss
+     * @return
+     */
+    public static DateFormats of(String pattern) {
+        return of(pattern, null, null);
+    }
+
+    /**
+     * 获取某个格式的日期格式化，同样的格式、时区和Locale返回同一个对象
+     *
+     * @param pattern 日期格式,例如yyyy-MM-dd HH:mm:ss
+     * @param zone    时区，null为每次格式化时取默认时区
+     * @param locale  月份、星期等文字使用的Locale，null为每次格式化时取默认Locale
+     * @return
+     */
+    public static DateFormats of(String pattern, ZoneId zone, Locale locale) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("日期格式不能为空");
+        }
+        List<Object> key = Arrays.asList(pattern, zone, locale);
+        DateFormats formats = CACHE.get(key);
+        if (formats == null) {
+            formats = new DateFormats(pattern, zone, locale, null);
+            DateFormats cached = CACHE.putIfAbsent(key, formats);
+            if (cached != null) {
+                formats = cached;
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * 按SimpleDateFormat格式化 复制一份sdf，之后修改sdf不会影响结果；时区、Locale、日历等设置都保留
+     * 每次返回新的对象，不缓存
+     *
+     * @param sdf
+     * @return
+     */
+    public static DateFormats from(SimpleDateFormat sdf) {
+        if (sdf == null) {
+            throw new IllegalArgumentException("日期格式不能为空");
+        }
+        SimpleDateFormat copy = (SimpleDateFormat) sdf.clone();
+        return new DateFormats(copy.toPattern(), copy.getTimeZone().toZoneId(), null, copy);
+    }
+
+    /**
+     * 默认格式 yyyy-MM-dd HH:mm:ss
+     *
+     * @return
+     */
+    public static DateFormats defaults() {
+        return of(DEFAULT_PATTERN);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * 预先编译好的DateTimeFormatter 没有指定Locale时为创建时的默认Locale
+     *
+     * @return 格式和SimpleDateFormat不完全相同或者由SimpleDateFormat创建时为null
+     */
+    public DateTimeFormatter getFormatter() {
+        return formatter;
+    }
+
+    /**
+     * 新建同样设置的SimpleDateFormat
+     *
+     * @return
+     */
+    public SimpleDateFormat newSimpleDateFormat() {
+        if (template != null) {
+            return (SimpleDateFormat) template.clone();
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat(pattern, locale == null ? Locale.getDefault(Locale.Category.FORMAT) : locale);
+        if (zone != null) {
+            sdf.setTimeZone(TimeZone.getTimeZone(zone));
+        }
+        return sdf;
+    }
+
+    /**
+     * 是否是支持的日期类型
+     *
+     * @param value
+     * @return
+     */
+    public static boolean isDate(Object value) {
+        return value instanceof Date || value instanceof LocalDateTime || value instanceof LocalDate
+                || value instanceof Instant || value instanceof ZonedDateTime || value instanceof OffsetDateTime
+                || value instanceof LocalTime || value instanceof Calendar;
+    }
+
+    /**
+     * 格式化日期
+     *
+     * @param value 日期
+     * @return 不是支持的日期类型时返回null
+     */
+    public String format(Object value) {
+        ZonedDateTime dateTime = toDateTime(value, zone == null ? ZoneId.systemDefault() : zone);
+        if (dateTime == null) {
+            return null;
+        }
+        if (formatter != null && !dateTime.toInstant().isBefore(GREGORIAN_CUTOVER) && dateTime.getYear() <= MAX_YEAR) {
+            //withLocale在Locale相同时返回原来的对象
+            return (locale == null ? formatter.withLocale(Locale.getDefault(Locale.Category.FORMAT)) : formatter).format(dateTime);
+        }
+        return legacyFormat().format(Date.from(dateTime.toInstant()));
+    }
+
+    /**
+     * 当前线程的SimpleDateFormat 默认Locale改变后重新创建，没有指定时区时每次设置成默认时区
+     *
+     * @return
+     */
+    private SimpleDateFormat legacyFormat() {
+        LegacyFormat current = legacy.get();
+        if (template != null) {
+            if (current == null) {
+                current = new LegacyFormat(null, (SimpleDateFormat) template.clone());
+                legacy.set(current);
+            }
+            return current.sdf;
+        }
+        Locale l = locale == null ? Locale.getDefault(Locale.Category.FORMAT) : locale;
+        if (current == null || !current.locale.equals(l)) {
+            current = new LegacyFormat(l, new SimpleDateFormat(pattern, l));
+            if (zone != null) {
+                current.sdf.setTimeZone(TimeZone.getTimeZone(zone));
+            }
+            legacy.set(current);
+        }
+        if (zone == null) {
+            current.sdf.setTimeZone(TimeZone.getDefault());
+        }
+        return current.sdf;
+    }
+
+    /**
+     * 格式中的每个字母在DateTimeFormatter和SimpleDateFormat中的含义是否都相同
+     * 只允许G y M d H m s S E a h K k D z Z X，并且排除个数不同时含义不同的写法(例如SS、MMMMM、EEEEE)；
+     * [ ] { } #在DateTimeFormatter中是保留字符，也按不相同处理
+     *
+     * @param pattern
+     * @return
+     */
+    static boolean isCompatible(String pattern) {
+        boolean quoted = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+                i++;
+                continue;
+            }
+            if (quoted) {
+                i++;
+                continue;
+            }
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int count = 1;
+                while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+                    count++;
+                }
+                if (count > maxLetters(c) || (c == 'S' && count != 3)) {
+                    return false;
+                }
+                i += count;
+                continue;
+            }
+            if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * 两边含义相同时字母最多的个数
+     *
+     * @param letter
+     * @return 含义不同的字母为0
+     */
+    private static int maxLetters(char letter) {
+        switch (letter) {
+            case 'y':
+                return Integer.MAX_VALUE;
+            case 'M':
+            case 'E':
+            case 'z':
+                return 4;
+            case 'G':
+            case 'D':
+            case 'S':
+            case 'Z':
+            case 'X':
+                return 3;
+            case 'd':
+            case 'H':
+            case 'm':
+            case 's':
+            case 'h':
+            case 'K':
+            case 'k':
+                return 2;
+            case 'a':
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 日期转换成带时区的时间 LocalDate为当天0点，LocalTime为1900-01-01(excel的第一天)
+     *
+     * @param value
+     * @param zone  没有时区的值使用的时区
+     * @return 不是支持的日期类型时返回null
+     */
+    private static ZonedDateTime toDateTime(Object value, ZoneId zone) {
+        if (value instanceof Date) {
+            //java.sql.Date不支持toInstant
+            return Instant.ofEpochMilli(((Date) value).getTime()).atZone(zone);
+        } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(zone);
+        } else if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay(zone);
+        } else if (value instanceof Instant) {
+            return ((Instant) value).atZone(zone);
+        } else if (value instanceof ZonedDateTime) {
+            return (ZonedDateTime) value;
+        } else if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toZonedDateTime();
+        } else if (value instanceof LocalTime) {
+            return ((LocalTime) value).atDate(LocalDate.of(1900, 1, 1)).atZone(zone);
+        } else if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            return Instant.ofEpochMilli(calendar.getTimeInMillis()).atZone(calendar.getTimeZone().toZoneId());
+        }
+        return null;
+    }
+
+    private static final class LegacyFormat {
+
+        private final Locale locale;
+        private final SimpleDateFormat sdf;
+
+        private LegacyFormat(Locale locale, SimpleDateFormat sdf) {
+            this.locale = locale;
+            this.sdf = sdf;
+        }
+    }
+}
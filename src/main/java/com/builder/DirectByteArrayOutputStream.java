@@ -0,0 +1,25 @@
+package com.builder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * 可以直接转成InputStream的ByteArrayOutputStream
+ * toInputStream()直接读取内部的字节数组，不像toByteArray()那样再复制一份
+ */
+public class DirectByteArrayOutputStream extends ByteArrayOutputStream {
+
+    public DirectByteArrayOutputStream() {
+        super(8192);
+    }
+
+    /**
+     * 转成InputStream，和这个输出流共用同一个字节数组，转换后不要再写入
+     *
+     * @return
+     */
+    public synchronized InputStream toInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+}
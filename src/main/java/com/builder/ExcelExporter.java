@@ -0,0 +1,507 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可复用的导出器 保存导出配置(编译好的表头、文件格式、样式、日期格式、拆分策略、列宽策略、颜色规则)，创建后不可修改
+ * 每次export时按配置创建一个新的导出上下文(workbook、样式、列宽等只属于这一次导出)，
+ * 表头布局、日期格式化、实体类字段读取器等在所有导出之间共用，不再重复计算
+ * 同一个实例可以在多个线程中同时导出，例如作为单例在web服务中使用
+ * 用法: ExcelExporter.of(header).withTitle("报表").withTypedCell(true).export(rows, response.getOutputStream())
+ */
+public final class ExcelExporter<T> {
+
+    /**
+     * 文件格式
+     */
+    public enum Format {
+        /**
+         * xlsx 使用POI对象模型(XSSExcelTool)
+         */
+        XLSX(".xlsx", true),
+        /**
+         * xlsx 使用SXSSF流式写入，内存中只保留滑动窗口内的行
+         */
+        XLSX_STREAMING(".xlsx", false),
+        /**
+         * xlsx 不经过POI对象模型直接生成xml
+         */
+        XLSX_NATIVE(".xlsx", false),
+        /**
+         * xlsx 支持颜色和颜色规则(XSSExcelColorTool)
+         */
+        XLSX_COLOR(".xlsx", true),
+        /**
+         * xlsx 支持颜色和颜色规则，使用SXSSF流式写入，内存中只保留滑动窗口内的行
+         */
+        XLSX_COLOR_STREAMING(".xlsx", false),
+        /**
+         * xls (HSSExcelTool)
+         */
+        XLS(".xls", true),
+        /**
+         * 逗号分隔的文本 不创建workbook
+         */
+        CSV(".csv", false),
+        /**
+         * 制表符分隔的文本 不创建workbook
+         */
+        TSV(".tsv", false);
+
+        private final String extension;
+        /**
+         * 整个文件是否都放在内存中，内存预算只对这些格式生效
+         */
+        private final boolean inMemory;
+
+        Format(String extension, boolean inMemory) {
+            this.extension = extension;
+            this.inMemory = inMemory;
+        }
+
+        /**
+         * 文件后缀
+         *
+         * @return 例如.xls、.xlsx
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        public boolean isInMemory() {
+            return inMemory;
+        }
+    }
+
+    /**
+     * SXSSF默认的滑动窗口行数
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+
+    private final CompiledHeader header;
+    /**
+     * 布局后的表头 只在导出时读取，所有导出共用
+     */
+    private final List<Column> columns;
+    /**
+     * 叶子列数 估算内存时使用
+     */
+    private final int leafCount;
+    private final Format format;
+    private final String title;
+    private final int colWidth;
+    private final int rowHeight;
+    /**
+     * 样式 0:默认 1:主体左对齐 2:表头深红底白字
+     */
+    private final int styleFlag;
+    private final int windowSize;
+    private final DateFormats dateFormats;
+    private final boolean typedCell;
+    private final SheetSplitPolicy splitPolicy;
+    /**
+     * 列宽估算策略 为null时使用各个工具的默认行为
+     */
+    private final ColumnWidthEstimator widthEstimator;
+    private final List<ColorRule> colorRules;
+    /**
+     * CSV/TSV的表头写法
+     */
+    private final CsvExportBackend.HeaderMode csvHeader;
+    /**
+     * 内存预算 为null时不限制
+     */
+    private final ExportMemoryBudget memoryBudget;
+    /**
+     * 超过内存预算时是否允许改成SXSSF流式导出xlsx，不允许时拒绝
+     */
+    private final boolean allowPromotion;
+
+    private ExcelExporter(CompiledHeader header, Format format, String title, int colWidth, int rowHeight, int styleFlag,
+                          int windowSize, DateFormats dateFormats, boolean typedCell, SheetSplitPolicy splitPolicy,
+                          ColumnWidthEstimator widthEstimator, List<ColorRule> colorRules,
+                          CsvExportBackend.HeaderMode csvHeader, ExportMemoryBudget memoryBudget,
+                          boolean allowPromotion) {
+        this(header, header.getColumns(), format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats,
+                typedCell, splitPolicy, widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    private ExcelExporter(CompiledHeader header, List<Column> columns, Format format, String title, int colWidth,
+                          int rowHeight, int styleFlag, int windowSize, DateFormats dateFormats, boolean typedCell,
+                          SheetSplitPolicy splitPolicy, ColumnWidthEstimator widthEstimator, List<ColorRule> colorRules,
+                          CsvExportBackend.HeaderMode csvHeader, ExportMemoryBudget memoryBudget,
+                          boolean allowPromotion) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("表头不能为空");
+        }
+        this.header = header;
+        this.columns = columns;
+        this.leafCount = header.getLeafColumns().size();
+        this.format = format;
+        this.title = title;
+        this.colWidth = colWidth;
+        this.rowHeight = rowHeight;
+        this.styleFlag = styleFlag;
+        this.windowSize = windowSize;
+        this.dateFormats = dateFormats;
+        this.typedCell = typedCell;
+        this.splitPolicy = splitPolicy;
+        this.widthEstimator = widthEstimator;
+        this.colorRules = colorRules;
+        this.csvHeader = csvHeader;
+        this.memoryBudget = memoryBudget;
+        this.allowPromotion = allowPromotion;
+    }
+
+    /**
+     * 默认配置 xlsx、sheet名称sheet1、2、3...、列宽20、行高20、日期格式yyyy-MM-dd HH:mm:ss、全部按文本写入
+     *
+     * @param header 编译好的表头
+     * @return
+     */
+    public static <T> ExcelExporter<T> of(CompiledHeader header) {
+        return new ExcelExporter<>(header, Format.XLSX, "sheet", 20, 20, 0, DEFAULT_WINDOW_SIZE,
+                DateFormats.defaults(), false, null, null, Collections.<ColorRule>emptyList(), CsvExportBackend.HeaderMode.ROWS, null, false);
+    }
+
+    private ExcelExporter<T> copy(Format format, String title, int colWidth, int rowHeight, int styleFlag, int windowSize,
+                                  DateFormats dateFormats, boolean typedCell, SheetSplitPolicy splitPolicy,
+                                  ColumnWidthEstimator widthEstimator, List<ColorRule> colorRules,
+                                  CsvExportBackend.HeaderMode csvHeader, ExportMemoryBudget memoryBudget,
+                                  boolean allowPromotion) {
+        return new ExcelExporter<>(header, columns, format, title, colWidth, rowHeight, styleFlag, windowSize,
+                dateFormats, typedCell, splitPolicy, widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    public ExcelExporter<T> withFormat(Format format) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * SXSSF流式导出 内存中保留windowSize行，带颜色的xlsx改成XLSX_COLOR_STREAMING
+     *
+     * @param windowSize 滑动窗口行数
+     * @return
+     */
+    public ExcelExporter<T> withStreaming(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("滑动窗口行数必须大于0");
+        }
+        Format streaming = format == Format.XLSX_COLOR || format == Format.XLSX_COLOR_STREAMING
+                ? Format.XLSX_COLOR_STREAMING : Format.XLSX_STREAMING;
+        return copy(streaming, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell,
+                splitPolicy, widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * sheet名称 第几个sheet的序号拼在后面
+     *
+     * @param title
+     * @return
+     */
+    public ExcelExporter<T> withTitle(String title) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    public ExcelExporter<T> withSize(int colWidth, int rowHeight) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * 样式
+     *
+     * @param styleFlag 0:默认 1:主体左对齐 2:表头深红底白字
+     * @return
+     */
+    public ExcelExporter<T> withStyle(int styleFlag) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    public ExcelExporter<T> withDateFormat(String pattern) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, DateFormats.of(pattern), typedCell,
+                splitPolicy, widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * 是否按数据类型写入单元格(数值、布尔、日期写成excel原生类型)
+     *
+     * @param typedCell
+     * @return
+     */
+    public ExcelExporter<T> withTypedCell(boolean typedCell) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    public ExcelExporter<T> withSplitPolicy(SheetSplitPolicy splitPolicy) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * 列宽估算策略 xls和直接生成xml的xlsx不支持
+     *
+     * @param widthEstimator
+     * @return
+     */
+    public ExcelExporter<T> withWidthEstimator(ColumnWidthEstimator widthEstimator) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * 颜色规则 只在XLSX_COLOR、XLSX_COLOR_STREAMING中使用
+     *
+     * @param rules
+     * @return
+     */
+    public ExcelExporter<T> withColorRules(List<ColorRule> rules) {
+        List<ColorRule> rulesCopy = Collections.unmodifiableList(new ArrayList<>(rules));
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, rulesCopy, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * CSV/TSV的表头写法 只在CSV、TSV中使用
+     *
+     * @param csvHeader 多行、路径名或不写表头
+     * @return
+     */
+    public ExcelExporter<T> withCsvHeader(CsvExportBackend.HeaderMode csvHeader) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    /**
+     * 内存预算 xls、xlsx、带颜色的xlsx导出前按行数 × 叶子列数估算内存，超过预算时改成流式导出或拒绝
+     *
+     * @param memoryBudget   内存预算，多个导出器可以共用一个，为null时不限制
+     * @param allowPromotion 超过预算时是否允许改成SXSSF流式导出xlsx(xls会变成xlsx，带颜色的xlsx改成带颜色的流式导出)，不允许时拒绝
+     * @return
+     */
+    public ExcelExporter<T> withMemoryBudget(ExportMemoryBudget memoryBudget, boolean allowPromotion) {
+        return copy(format, title, colWidth, rowHeight, styleFlag, windowSize, dateFormats, typedCell, splitPolicy,
+                widthEstimator, colorRules, csvHeader, memoryBudget, allowPromotion);
+    }
+
+    public CompiledHeader getHeader() {
+        return header;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * 按内存预算决定导出的格式，不预留内存也不写入 用于在写响应头前确定文件后缀或提前拒绝
+     * 实际导出时在预算内的导出还要预留内存，排队超时后的结果以export的返回值为准
+     *
+     * @param rowCount 数据行数，未知时为-1(设置了内存预算时按超过预算处理)
+     * @return
+     */
+    public ExportDecision decide(long rowCount) {
+        if (memoryBudget == null || !format.isInMemory()) {
+            return new ExportDecision(ExportDecision.Outcome.AS_REQUESTED, format, format, rowCount, 0, 0, null);
+        }
+        if (rowCount < 0) {
+            return overBudget(rowCount, Long.MAX_VALUE, "数据行数未知，不能估算内存");
+        }
+        long bytes = memoryBudget.estimate(format == Format.XLS, rowCount, leafCount);
+        if (bytes > memoryBudget.getMaxBytes()) {
+            return overBudget(rowCount, bytes, "估算内存" + bytes + "字节超过预算" + memoryBudget.getMaxBytes() + "字节");
+        }
+        return new ExportDecision(ExportDecision.Outcome.AS_REQUESTED, format, format, rowCount, bytes, 0, null);
+    }
+
+    /**
+     * 超过内存预算 允许时改成流式导出(XLSX_COLOR改成XLSX_COLOR_STREAMING，保留颜色和颜色规则)，否则拒绝
+     *
+     * @param rowCount 数据行数
+     * @param bytes    估算的字节数
+     * @param reason   原因
+     * @return
+     */
+    private ExportDecision overBudget(long rowCount, long bytes, String reason) {
+        if (allowPromotion) {
+            if (format == Format.XLSX_COLOR) {
+                return new ExportDecision(ExportDecision.Outcome.PROMOTED, format, Format.XLSX_COLOR_STREAMING, rowCount,
+                        bytes, 0, reason + "，改成流式导出xlsx(保留颜色)");
+            }
+            return new ExportDecision(ExportDecision.Outcome.PROMOTED, format, Format.XLSX_STREAMING, rowCount, bytes, 0,
+                    reason + "，改成流式导出xlsx");
+        }
+        return new ExportDecision(ExportDecision.Outcome.REJECTED, format, null, rowCount, bytes, 0, reason + "，拒绝导出");
+    }
+
+    /**
+     * 导出到调用方的输出流，输出流由调用方关闭
+     *
+     * @param rows 行内数据
+     * @param out  输出流
+     * @return 内存预算的决定，拒绝时没有写入任何内容
+     * @throws Exception
+     */
+    public ExportDecision export(List<T> rows, OutputStream out) throws Exception {
+        return export(rows.iterator(), rows.size(), out);
+    }
+
+    /**
+     * 导出到文件 超过内存预算改成流式导出时文件后缀不会修改，请先用decide确定后缀
+     *
+     * @param rows     行内数据
+     * @param filePath 保存路径
+     * @return 内存预算的决定，超过预算被拒绝时不创建文件
+     * @throws Exception
+     */
+    public ExportDecision export(Iterator<T> rows, String filePath) throws Exception {
+        return export(rows, -1, filePath);
+    }
+
+    /**
+     * 导出到文件 超过内存预算改成流式导出时文件后缀不会修改，请先用decide确定后缀
+     *
+     * @param rows     行内数据
+     * @param rowCount 数据行数，未知时为-1
+     * @param filePath 保存路径
+     * @return 内存预算的决定，超过预算被拒绝时不创建文件
+     * @throws Exception
+     */
+    public ExportDecision export(Iterator<T> rows, long rowCount, String filePath) throws Exception {
+        ExportDecision decision = decide(rowCount);
+        if (decision.isRejected()) {
+            return decision;
+        }
+        File file = new File(filePath);
+        if (file.getParentFile() != null && !file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            return export(rows, rowCount, out);
+        }
+    }
+
+    /**
+     * 导出到调用方的输出流，输出流由调用方关闭
+     *
+     * @param rows 行内数据，边读取边写入
+     * @param out  输出流
+     * @return 内存预算的决定，拒绝时没有写入任何内容
+     * @throws Exception
+     */
+    public ExportDecision export(Iterator<T> rows, OutputStream out) throws Exception {
+        return export(rows, -1, out);
+    }
+
+    /**
+     * 导出到调用方的输出流，输出流由调用方关闭
+     * 每次调用创建自己的workbook和样式，可以在多个线程中同时调用；
+     * 设置了内存预算时，在预算内的导出先预留估算的内存，预算被其它导出占满时排队，超时后改成流式导出或拒绝
+     *
+     * @param rows     行内数据，边读取边写入
+     * @param rowCount 数据行数，未知时为-1
+     * @param out      输出流
+     * @return 内存预算的决定，拒绝时没有写入任何内容
+     * @throws Exception
+     */
+    public ExportDecision export(Iterator<T> rows, long rowCount, OutputStream out) throws Exception {
+        ExportDecision decision = decide(rowCount);
+        if (decision.isRejected()) {
+            return decision;
+        }
+        long bytes = decision.getEstimatedBytes();
+        if (decision.getOutcome() != ExportDecision.Outcome.AS_REQUESTED || bytes == 0) {
+            write(decision.getFormat(), rows, out);
+            return decision;
+        }
+        long start = System.nanoTime();
+        if (!memoryBudget.reserve(bytes)) {
+            decision = overBudget(rowCount, bytes, "内存预算被同时进行的导出占满，等待" + memoryBudget.getWaitMillis() + "毫秒后仍然不够");
+            decision = decision.waited(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (!decision.isRejected()) {
+                write(decision.getFormat(), rows, out);
+            }
+            return decision;
+        }
+        try {
+            decision = decision.waited(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            write(format, rows, out);
+        } finally {
+            memoryBudget.release(bytes);
+        }
+        return decision;
+    }
+
+    /**
+     * 按格式创建这一次导出使用的工具并写入
+     *
+     * @param format 文件格式
+     * @param rows   行内数据
+     * @param out    输出流
+     * @throws Exception
+     */
+    private void write(Format format, Iterator<T> rows, OutputStream out) throws Exception {
+        switch (format) {
+            case CSV:
+            case TSV: {
+                CsvExportBackend backend = new CsvExportBackend(Channels.newChannel(out), format == Format.CSV ? ',' : '\t',
+                        csvHeader, dateFormats);
+                new ExportPipeline<T>(columns, title, splitPolicy, dateFormats, typedCell, null).export(backend, rows);
+                break;
+            }
+            case XLS: {
+                HSSExcelTool<T> tool = new HSSExcelTool<>(title, colWidth, rowHeight, styleFlag);
+                tool.setDateFormats(dateFormats);
+                tool.setTypedCell(typedCell);
+                tool.setSplitPolicy(splitPolicy);
+                tool.exportExcel(columns, rows, out, true);
+                break;
+            }
+            case XLSX_COLOR:
+            case XLSX_COLOR_STREAMING: {
+                XSSExcelColorTool<T> tool = new XSSExcelColorTool<>(title, colWidth, rowHeight, styleFlag);
+                tool.setDateFormats(dateFormats);
+                tool.setTypedCell(typedCell);
+                tool.setSplitPolicy(splitPolicy);
+                if (widthEstimator != null) {
+                    tool.setWidthEstimator(widthEstimator);
+                }
+                tool.setColorRules(new ArrayList<>(colorRules));
+                if (format == Format.XLSX_COLOR_STREAMING) {
+                    tool.exportStreamingExcel(columns, rows, out, windowSize);
+                } else {
+                    tool.exportExcel(columns, rows, out, true);
+                }
+                break;
+            }
+            default: {
+                XSSExcelTool<T> tool = format == Format.XLSX_STREAMING
+                        ? new XSSExcelTool<>(title, colWidth, rowHeight, styleFlag, windowSize)
+                        : new XSSExcelTool<>(title, colWidth, rowHeight, styleFlag);
+                tool.setDateFormats(dateFormats);
+                tool.setTypedCell(typedCell);
+                tool.setSplitPolicy(splitPolicy);
+                tool.setWidthEstimator(widthEstimator);
+                if (format == Format.XLSX_NATIVE) {
+                    tool.exportNativeExcel(columns, rows, out, true);
+                } else {
+                    tool.exportExcel(columns, rows, out, true);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.builder;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * excel流式读取 按文件头选择xlsx(XlsxStreamReader)或xls(XlsStreamReader)，不创建workbook的对象模型
+ * 读取的结果和getExcelValues、getExcelMapVal一致：第1行为表头，列数按表头计算；
+ * 字符串去掉首尾空格，数字为String.valueOf(double)，布尔为true/false，公式和错误为空字符串；合并单元格取左上角单元格的值
+ * 用法: try (ExcelStreamReader reader = ExcelStreamReader.open(path)) { reader.readRows(1, row -> ...); }
+ * 一个文件使用一个，不是线程安全的
+ */
+public abstract class ExcelStreamReader implements Closeable {
+
+    /**
+     * 分批导入默认的批次大小
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * 按文件头打开 xlsx使用XlsxStreamReader，xls使用XlsStreamReader
+     *
+     * @param fileUrl 文件路径
+     * @return
+     * @throws IOException
+     */
+    public static ExcelStreamReader open(String fileUrl) throws IOException {
+        FileMagic magic = FileMagic.valueOf(new File(fileUrl));
+        if (magic == FileMagic.OOXML) {
+            return XlsxStreamReader.open(fileUrl);
+        }
+        if (magic == FileMagic.OLE2) {
+            return XlsStreamReader.open(fileUrl);
+        }
+        throw new IllegalArgumentException("不支持的文件格式:" + magic);
+    }
+
+    /**
+     * 是否可以流式读取(xlsx或xls，按文件头判断，和后缀无关)
+     *
+     * @param fileUrl 文件路径
+     * @return
+     * @throws IOException
+     */
+    public static boolean isSupported(String fileUrl) throws IOException {
+        FileMagic magic = FileMagic.valueOf(new File(fileUrl));
+        return magic == FileMagic.OOXML || magic == FileMagic.OLE2;
+    }
+
+    /**
+     * 工作表总数
+     *
+     * @return
+     * @throws IOException
+     */
+    public abstract int getSheetCount() throws IOException;
+
+    /**
+     * 读取一个工作表 把单元格逐个交给assembler
+     *
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param assembler 按表头组装每一行
+     * @throws IOException
+     */
+    abstract void read(int sheetNum, SheetRowAssembler assembler) throws IOException;
+
+    /**
+     * 逐行读取 和getExcelValues的结果一致，跳过第1行表头和不存在的行，每一行的列数和表头相同
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @param consumer 每一行的值
+     * @throws IOException
+     */
+    public void readRows(int sheetNum, Consumer<List<String>> consumer) throws IOException {
+        read(sheetNum, new SheetRowAssembler(
+                (rowIndex, values, blank) -> consumer.accept(new ArrayList<>(Arrays.asList(values))), null));
+    }
+
+    /**
+     * 逐行读取 和getExcelMapVal的结果一致，每一列为一个 表头 -> 值 的Map，跳过空行
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @param consumer 每一行的值
+     * @throws IOException
+     */
+    public void readMaps(int sheetNum, Consumer<List<Map<String, String>>> consumer) throws IOException {
+        readImportRows(sheetNum, row -> consumer.accept(row.toCellMaps()));
+    }
+
+    /**
+     * 逐行读取 和getExcelMapVal读取的行相同(跳过空行)，每一行只保存值的数组，所有行共用一个表头字典
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @param consumer 每一行
+     * @throws IOException
+     */
+    public void readImportRows(int sheetNum, Consumer<ImportRow> consumer) throws IOException {
+        ImportHeader[] header = new ImportHeader[1];
+        read(sheetNum, new SheetRowAssembler((rowIndex, values, blank) -> {
+            if (!blank) {
+                consumer.accept(new ImportRow(header[0], rowIndex, values));
+            }
+        }, title -> header[0] = new ImportHeader(title)));
+    }
+
+    /**
+     * 分批读取 批次大小为DEFAULT_BATCH_SIZE，在读取的线程中调用回调
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @param handler  回调
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readBatches(int sheetNum, ImportRowHandler handler) throws Exception {
+        readBatches(sheetNum, DEFAULT_BATCH_SIZE, handler, null);
+    }
+
+    /**
+     * 分批读取 在读取的线程中调用回调，读取和处理交替进行，内存中只有一批行
+     *
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readBatches(int sheetNum, int batchSize, ImportRowHandler handler) throws Exception {
+        readBatches(sheetNum, batchSize, handler, null);
+    }
+
+    /**
+     * 分批读取 onRowBatch在线程池中调用，处理上一批的同时读取下一批
+     * 同一时间只有一批在处理，批次的顺序不变；内存中最多有正在处理、正在读取的两批行
+     * onHeader和onSheetEnd在调用线程中调用，onSheetEnd在所有批次处理完后调用
+     *
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @param executor  处理批次的线程池，为null时在读取的线程中处理
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readBatches(int sheetNum, int batchSize, ImportRowHandler handler, ExecutorService executor) throws Exception {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("批次大小必须大于0:" + batchSize);
+        }
+        BatchDispatcher dispatcher = new BatchDispatcher(handler, batchSize, executor);
+        ImportHeader[] header = new ImportHeader[1];
+        try {
+            read(sheetNum, new SheetRowAssembler((rowIndex, values, blank) -> {
+                if (!blank) {
+                    dispatcher.add(new ImportRow(header[0], rowIndex, values));
+                }
+            }, title -> {
+                header[0] = new ImportHeader(title);
+                dispatcher.header(header[0]);
+            }));
+            dispatcher.finish();
+        } catch (Exception e) {
+            dispatcher.cancel();
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof StopRead) {
+                    throw (Exception) t.getCause();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 读取全部行 和getExcelValues的结果一致
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @return
+     * @throws IOException
+     */
+    public List<List<String>> getValues(int sheetNum) throws IOException {
+        List<List<String>> values = new ArrayList<>();
+        readRows(sheetNum, values::add);
+        return values;
+    }
+
+    /**
+     * 读取全部行 和getExcelMapVal的结果一致
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @return
+     * @throws IOException
+     */
+    public List<List<Map<String, String>>> getMapValues(int sheetNum) throws IOException {
+        List<List<Map<String, String>>> values = new ArrayList<>();
+        readMaps(sheetNum, values::add);
+        return values;
+    }
+
+    /**
+     * 读取全部行 和getExcelMapVal读取的行相同，内存占用只有每一列的值
+     *
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @return
+     * @throws IOException
+     */
+    public List<ImportRow> getImportRows(int sheetNum) throws IOException {
+        List<ImportRow> rows = new ArrayList<>();
+        readImportRows(sheetNum, rows::add);
+        return rows;
+    }
+
+    @Override
+    public abstract void close() throws IOException;
+
+    /**
+     * 回调抛出的异常 用于停止读取，readBatches中取出原来的异常
+     */
+    private static final class StopRead extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private StopRead(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * 把行攒成批次交给回调 有线程池时上一批处理完才提交下一批
+     */
+    private static final class BatchDispatcher {
+
+        private final ImportRowHandler handler;
+        private final int batchSize;
+        private final ExecutorService executor;
+        private List<ImportRow> batch;
+        /**
+         * 正在线程池中处理的批次
+         */
+        private Future<?> pending;
+        private int rowCount;
+
+        private BatchDispatcher(ImportRowHandler handler, int batchSize, ExecutorService executor) {
+            this.handler = handler;
+            this.batchSize = batchSize;
+            this.executor = executor;
+            this.batch = new ArrayList<>(Math.min(batchSize, 1024));
+        }
+
+        private void header(ImportHeader header) {
+            try {
+                handler.onHeader(header);
+            } catch (Exception e) {
+                throw new StopRead(e);
+            }
+        }
+
+        private void add(ImportRow row) {
+            batch.add(row);
+            if (batch.size() >= batchSize) {
+                try {
+                    dispatch();
+                } catch (Exception e) {
+                    throw new StopRead(e);
+                }
+            }
+        }
+
+        private void dispatch() throws Exception {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<ImportRow> rows = batch;
+            batch = new ArrayList<>(Math.min(batchSize, 1024));
+            rowCount += rows.size();
+            if (executor == null) {
+                handler.onRowBatch(rows);
+                return;
+            }
+            await();
+            pending = executor.submit(() -> {
+                handler.onRowBatch(rows);
+                return null;
+            });
+        }
+
+        /**
+         * 等待上一批处理完 处理时的异常原样抛出
+         *
+         * @throws Exception
+         */
+        private void await() throws Exception {
+            if (pending == null) {
+                return;
+            }
+            try {
+                pending.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw (Error) cause;
+            } finally {
+                pending = null;
+            }
+        }
+
+        private void finish() throws Exception {
+            try {
+                dispatch();
+                await();
+            } catch (Exception e) {
+                throw new StopRead(e);
+            }
+            handler.onSheetEnd(rowCount);
+        }
+
+        private void cancel() {
+            if (pending != null) {
+                pending.cancel(true);
+            }
+        }
+    }
+}
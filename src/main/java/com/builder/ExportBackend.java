@@ -0,0 +1,90 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 导出后端 负责某一种文件格式的写入(表头、单元格、列宽、保存)
+ * 读取行内数据、日期格式化、sheet拆分、列宽抽样都在ExportPipeline中统一完成，后端只接收整理好的值
+ * 已有的实现: PoiExportBackend(HSSF、XSSF、SXSSF)、XlsxExportBackend(不经过POI直接生成xlsx)、
+ * ColorExportBackend(XSSF、SXSSF，按行内数据的颜色和颜色规则设置样式)、CsvExportBackend
+ * 一次导出使用一个，不是线程安全的
+ */
+public interface ExportBackend {
+
+    /**
+     * 文件格式每个sheet的最大行数(包含表头)，拆分策略不会超过这个行数
+     *
+     * @return
+     */
+    int getMaxRows();
+
+    /**
+     * 新建一个sheet并写入表头
+     *
+     * @param sheetName      sheet名称
+     * @param headerCellList 表头数据(tree结构)
+     * @return 写入数据行的SheetWriter
+     * @throws IOException
+     */
+    SheetWriter newSheet(String sheetName, List<Column> headerCellList) throws IOException;
+
+    /**
+     * 所有sheet写完后保存文件并释放资源
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException;
+
+    /**
+     * 一个sheet的数据行写入 单元格按列号从小到大写入
+     * 用法: startRow -> writeCell ... -> endRow ... -> finish
+     */
+    interface SheetWriter {
+
+        /**
+         * 开始一行 导出流程调用这个方法，需要按整行的数据决定样式的后端(例如单元格颜色)覆盖
+         *
+         * @param rowIndex 行号(从0开始，包含表头)
+         * @param row      这一行的行内数据
+         * @throws IOException
+         */
+        default void startRow(int rowIndex, Object row) throws IOException {
+            startRow(rowIndex);
+        }
+
+        /**
+         * 开始一行
+         *
+         * @param rowIndex 行号(从0开始，包含表头)
+         * @throws IOException
+         */
+        void startRow(int rowIndex) throws IOException;
+
+        /**
+         * 写入一个单元格
+         *
+         * @param col   列号
+         * @param value 值,为null时只写样式；没有按数据类型写入时日期已经格式化成文本
+         * @throws IOException
+         */
+        void writeCell(int col, Object value) throws IOException;
+
+        /**
+         * 结束一行
+         *
+         * @throws IOException
+         */
+        void endRow() throws IOException;
+
+        /**
+         * 结束sheet
+         *
+         * @param widths 表头和数据的列宽，没有设置列宽估算策略时为null
+         * @throws IOException
+         */
+        void finish(ColumnWidthEstimator.Widths widths) throws IOException;
+    }
+}
@@ -0,0 +1,124 @@
+package com.builder;
+
+/**
+ * 导出前按内存预算做出的决定 返回给调用方，用于确定文件后缀、记录日志或拒绝时返回提示
+ * 不可变
+ */
+public final class ExportDecision {
+
+    /**
+     * 决定的结果
+     */
+    public enum Outcome {
+        /**
+         * 按请求的格式导出
+         */
+        AS_REQUESTED,
+        /**
+         * 超过内存预算，改成SXSSF流式导出xlsx(XLSX_COLOR改成XLSX_COLOR_STREAMING)
+         */
+        PROMOTED,
+        /**
+         * 超过内存预算且不允许改成流式导出，没有写入任何内容
+         */
+        REJECTED
+    }
+
+    private final Outcome outcome;
+    private final ExcelExporter.Format requestedFormat;
+    /**
+     * 实际导出的格式，拒绝时为null
+     */
+    private final ExcelExporter.Format format;
+    /**
+     * 数据行数，未知时为-1
+     */
+    private final long rowCount;
+    /**
+     * 估算占用的内存，没有设置内存预算或流式导出时为0
+     */
+    private final long estimatedBytes;
+    /**
+     * 排队等待内存预算的毫秒数
+     */
+    private final long waitedMillis;
+    private final String reason;
+
+    ExportDecision(Outcome outcome, ExcelExporter.Format requestedFormat, ExcelExporter.Format format, long rowCount,
+                   long estimatedBytes, long waitedMillis, String reason) {
+        this.outcome = outcome;
+        this.requestedFormat = requestedFormat;
+        this.format = format;
+        this.rowCount = rowCount;
+        this.estimatedBytes = estimatedBytes;
+        this.waitedMillis = waitedMillis;
+        this.reason = reason;
+    }
+
+    /**
+     * 排队等待后的决定
+     *
+     * @param waitedMillis 等待的毫秒数
+     * @return
+     */
+    ExportDecision waited(long waitedMillis) {
+        return new ExportDecision(outcome, requestedFormat, format, rowCount, estimatedBytes, waitedMillis, reason);
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isRejected() {
+        return outcome == Outcome.REJECTED;
+    }
+
+    public boolean isPromoted() {
+        return outcome == Outcome.PROMOTED;
+    }
+
+    public ExcelExporter.Format getRequestedFormat() {
+        return requestedFormat;
+    }
+
+    public ExcelExporter.Format getFormat() {
+        return format;
+    }
+
+    /**
+     * 实际导出文件的后缀
+     *
+     * @return 例如.xls、.xlsx，拒绝时为null
+     */
+    public String getExtension() {
+        return format == null ? null : format.getExtension();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getWaitedMillis() {
+        return waitedMillis;
+    }
+
+    /**
+     * 决定的原因 按请求的格式导出时为null
+     *
+     * @return
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportDecision{" + outcome + ", " + requestedFormat + " -> " + format + ", rows=" + rowCount
+                + ", estimatedBytes=" + estimatedBytes + ", waitedMillis=" + waitedMillis
+                + (reason == null ? "" : ", reason=" + reason) + "}";
+    }
+}
@@ -0,0 +1,140 @@
+package com.builder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 导出内存预算 在整个workbook都放在内存中的导出(xls、xlsx、带颜色的xlsx)开始前，按行数 × 叶子列数估算占用的内存
+ * 超过预算上限的导出不再写入内存：允许时改成SXSSF流式导出，否则拒绝；
+ * 在预算内的导出先预留估算的内存，同时进行的导出预留的总和超过上限时排队等待，等待超时后同样改成流式导出或拒绝
+ * 每个单元格的估算字节数按实测的堆占用取整(HSSF约200字节，XSSF约1000字节)，可以按实际情况调整
+ * 多个导出共用一个实例(例如整个应用一个)，线程安全
+ */
+public final class ExportMemoryBudget {
+
+    /**
+     * xls每个单元格的估算字节数
+     */
+    public static final long XLS_BYTES_PER_CELL = 200;
+    /**
+     * xlsx每个单元格的估算字节数
+     */
+    public static final long XLSX_BYTES_PER_CELL = 1000;
+
+    /**
+     * 同时进行的导出预留内存的上限
+     */
+    private final long maxBytes;
+    /**
+     * 预算不够时最多等待的毫秒数，0为不等待
+     */
+    private final long waitMillis;
+    private final long xlsBytesPerCell;
+    private final long xlsxBytesPerCell;
+    /**
+     * 已经预留的字节数
+     */
+    private long reserved;
+
+    /**
+     * @param maxBytes         同时进行的导出预留内存的上限
+     * @param waitMillis       预算不够时最多等待的毫秒数，0为不等待
+     * @param xlsBytesPerCell  xls每个单元格的估算字节数
+     * @param xlsxBytesPerCell xlsx每个单元格的估算字节数
+     */
+    public ExportMemoryBudget(long maxBytes, long waitMillis, long xlsBytesPerCell, long xlsxBytesPerCell) {
+        if (maxBytes <= 0 || waitMillis < 0 || xlsBytesPerCell <= 0 || xlsxBytesPerCell <= 0) {
+            throw new IllegalArgumentException("内存预算和每个单元格的字节数必须大于0，等待时间不能小于0");
+        }
+        this.maxBytes = maxBytes;
+        this.waitMillis = waitMillis;
+        this.xlsBytesPerCell = xlsBytesPerCell;
+        this.xlsxBytesPerCell = xlsxBytesPerCell;
+    }
+
+    /**
+     * 预算不够时不等待
+     *
+     * @param maxBytes 同时进行的导出预留内存的上限
+     * @return
+     */
+    public static ExportMemoryBudget of(long maxBytes) {
+        return of(maxBytes, 0);
+    }
+
+    /**
+     * @param maxBytes   同时进行的导出预留内存的上限
+     * @param waitMillis 预算不够时最多等待的毫秒数
+     * @return
+     */
+    public static ExportMemoryBudget of(long maxBytes, long waitMillis) {
+        return new ExportMemoryBudget(maxBytes, waitMillis, XLS_BYTES_PER_CELL, XLSX_BYTES_PER_CELL);
+    }
+
+    /**
+     * 估算导出占用的内存
+     *
+     * @param xls     是否是xls
+     * @param rows    数据行数
+     * @param columns 叶子列数
+     * @return 超出long范围时为Long.MAX_VALUE
+     */
+    public long estimate(boolean xls, long rows, int columns) {
+        long cells = rows * columns;
+        long perCell = xls ? xlsBytesPerCell : xlsxBytesPerCell;
+        if (rows != 0 && (cells / rows != columns || cells > Long.MAX_VALUE / perCell)) {
+            return Long.MAX_VALUE;
+        }
+        return cells * perCell;
+    }
+
+    /**
+     * 预留内存 同时进行的导出预留的总和超过上限时等待其它导出释放
+     *
+     * @param bytes 估算的字节数，不能超过上限
+     * @return 等待超时或被中断时返回false
+     */
+    synchronized boolean reserve(long bytes) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (reserved + bytes > maxBytes) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        reserved += bytes;
+        return true;
+    }
+
+    /**
+     * 导出结束后释放预留的内存
+     *
+     * @param bytes reserve时的字节数
+     */
+    synchronized void release(long bytes) {
+        reserved -= bytes;
+        notifyAll();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * 当前已经预留的字节数
+     *
+     * @return
+     */
+    public synchronized long getReserved() {
+        return reserved;
+    }
+}
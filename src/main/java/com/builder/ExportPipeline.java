@@ -0,0 +1,216 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 统一的导出流程 整理表头 -> 写表头 -> 写数据行 -> 保存，和文件格式无关
+ * 行内数据读取(RowValueReader)、日期格式化、按数据类型写入、sheet拆分、列宽抽样只在这里实现一次，
+ * 具体的写入交给ExportBackend，HSSF、XSSF、SXSSF和直接生成xml的xlsx都走同一个流程
+ * 不可变，读取器等每次导出单独创建，同一个实例可以在多个线程中同时使用(每次导出使用自己的后端)
+ * 用法: new ExportPipeline<>(header, "sheet", null, DateFormats.defaults(), false, null).export(backend, rows)
+ */
+public final class ExportPipeline<T> {
+
+    private final List<Column> headerCellList;
+    /**
+     * 有fieldName的列 按表头的先序遍历，有子节点的列也在其中但不写数据
+     */
+    private final List<Column> listCol;
+    /**
+     * 按列号从小到大的叶子列下标
+     */
+    private final int[] order;
+    private final String title;
+    /**
+     * 为null时按文件格式的最大行数拆分
+     */
+    private final SheetSplitPolicy splitPolicy;
+    private final DateFormats dateFormats;
+    private final boolean typedCell;
+    /**
+     * 为null时不计算列宽
+     */
+    private final ColumnWidthEstimator widthEstimator;
+
+    /**
+     * @param headerCellList 表头数据(tree结构)
+     * @param title          sheet名称，第几个sheet的序号拼在后面
+     * @param splitPolicy    sheet拆分策略，为null时按文件格式的最大行数拆分
+     * @param dateFormats    日期格式化
+     * @param typedCell      是否按数据类型写入，false时日期先格式化成文本
+     * @param widthEstimator 列宽估算策略，为null时不计算列宽
+     */
+    public ExportPipeline(List<Column> headerCellList, String title, SheetSplitPolicy splitPolicy,
+                          DateFormats dateFormats, boolean typedCell, ColumnWidthEstimator widthEstimator) {
+        if (headerCellList == null || headerCellList.isEmpty()) {
+            throw new IllegalArgumentException("表头不能为空");
+        }
+        this.headerCellList = headerCellList;
+        List<Column> leaves = new ArrayList<>();
+        getColumnList(headerCellList, leaves);
+        this.listCol = Collections.unmodifiableList(leaves);
+        this.order = new RowValueReader(this.listCol).getWriteOrder();
+        this.title = title;
+        this.splitPolicy = splitPolicy;
+        this.dateFormats = dateFormats;
+        this.typedCell = typedCell;
+        this.widthEstimator = widthEstimator;
+    }
+
+    /**
+     * 写入所有数据并保存
+     *
+     * @param backend 导出后端
+     * @param data    行内数据，边读取边写入
+     * @throws IOException
+     */
+    public void export(ExportBackend backend, Iterator<T> data) throws IOException {
+        write(backend, data, true);
+        backend.finish();
+    }
+
+    /**
+     * 写入表头和数据，当前sheet达到拆分策略的上限且还有数据时新建sheet，不保存
+     *
+     * @param backend 导出后端
+     * @param data    行内数据
+     * @param flag    是否加载行数据，false时只输出表头
+     * @throws IOException
+     */
+    public void write(ExportBackend backend, Iterator<T> data, boolean flag) throws IOException {
+        SheetSplitPolicy policy = resolveSplitPolicy(backend.getMaxRows());
+        int headerRows = headerCellList.get(0).getTotalRow();
+        int index = 1;
+        do {
+            ExportBackend.SheetWriter sheet = backend.newSheet(title + index, headerCellList);
+            ColumnWidthEstimator.Widths widths = null;
+            if (widthEstimator != null) {
+                widths = widthEstimator.start();
+                measureHead(headerCellList, widths);
+            }
+            if (flag) {
+                writeRows(sheet, headerRows, data, policy.start(headerRows, listCol.size()), widths);
+            }
+            sheet.finish(widths);
+            index++;
+        } while (flag && data.hasNext());
+    }
+
+    /**
+     * 把行内数据写入一个sheet，写到计数器的上限为止
+     *
+     * @param sheet    sheet
+     * @param rowIndex 开始写入的行
+     * @param data     行内数据
+     * @param counter  这个sheet的拆分计数器
+     * @param widths   列宽，为null时不计算
+     * @return 下一个要写入的行
+     * @throws IOException
+     */
+    int writeRows(ExportBackend.SheetWriter sheet, int rowIndex, Iterator<T> data, SheetSplitPolicy.Counter counter,
+                  ColumnWidthEstimator.Widths widths) throws IOException {
+        RowValueReader reader = new RowValueReader(listCol);
+        for (; counter.hasRoom() && data.hasNext(); rowIndex++) {
+            T v = data.next();
+            boolean measure = widths != null && widths.sampleRow();
+            sheet.startRow(rowIndex, v);
+            for (int j : order) {
+                Object value = getValue(reader, v, j);
+                sheet.writeCell(listCol.get(j).getCol(), value);
+                counter.addCell(value);
+                if (measure && value != null) {
+                    widths.merge(listCol.get(j).getCol(), ColumnWidthEstimator.textWidth(value.toString()));
+                }
+            }
+            sheet.endRow();
+            counter.endRow();
+        }
+        return rowIndex;
+    }
+
+    /**
+     * 读取单元格要写入的值 没有按数据类型写入时日期格式化成文本
+     *
+     * @param reader 行内数据读取器
+     * @param row    行内数据
+     * @param index  叶子列下标
+     * @return
+     */
+    Object getValue(RowValueReader reader, T row, int index) {
+        Object value = reader.get(row, index);
+        if (!typedCell && DateFormats.isDate(value)) {
+            value = dateFormats.format(value);
+        }
+        return value;
+    }
+
+    /**
+     * 当前使用的拆分策略，不超过文件格式的最大行数
+     *
+     * @param formatMaxRows 文件格式的最大行数
+     * @return
+     */
+    SheetSplitPolicy resolveSplitPolicy(int formatMaxRows) {
+        SheetSplitPolicy policy = splitPolicy == null ? SheetSplitPolicy.rows(formatMaxRows) : splitPolicy;
+        return policy.limitTo(formatMaxRows);
+    }
+
+    /**
+     * 有fieldName的列 顺序和表头的先序遍历一致，有子节点的列也在其中(不写数据，Object[]/List行数据中不占位置)
+     *
+     * @return
+     */
+    public List<Column> getLeafColumns() {
+        return listCol;
+    }
+
+    /**
+     * 按列号从小到大的叶子列下标，同一个列号只保留最后一个
+     *
+     * @return
+     */
+    int[] getWriteOrder() {
+        return order;
+    }
+
+    /**
+     * 计算表头的列宽 合并的单元格按跨的列数平分
+     *
+     * @param cellList 表头数据
+     * @param widths   列宽
+     */
+    private static void measureHead(List<Column> cellList, ColumnWidthEstimator.Widths widths) {
+        for (Column column : cellList) {
+            int width = ColumnWidthEstimator.textWidth(column.getContent());
+            int cLen = Math.max(column.getCLen(), 1);
+            for (int col = column.getCol(); col < column.getCol() + cLen; col++) {
+                widths.merge(col, (width + cLen - 1) / cLen);
+            }
+            measureHead(column.getCellList(), widths);
+        }
+    }
+
+    /**
+     * 把column的columnList整理成一个list<column> 过滤表头的脏数据
+     *
+     * @param list    表头数据
+     * @param listCol 返回新的list
+     */
+    private static void getColumnList(List<Column> list, List<Column> listCol) {
+        for (Column column : list) {
+            if (column.getFieldName() != null) {
+                listCol.add(column);
+            }
+            List<Column> listChildren = column.getCellList();
+            if (listChildren.size() > 0) {
+                getColumnList(listChildren, listCol);
+            }
+        }
+    }
+}
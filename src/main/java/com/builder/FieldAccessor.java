@@ -0,0 +1,168 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体类行内数据的字段读取器
+ * 每个(实体类, 叶子列)组合只反射一次，把字段编译成MethodHandle按列的下标存放，
+ * 写单元格时按下标直接调用，不用每个单元格都遍历一遍getDeclaredFields()
+ * 缓存挂在实体类上(ClassValue)，不会阻止实体类的类加载器被回收；每个实体类按列的组合LRU淘汰，最多cacheSize个
+ * 线程安全，可以在多个导出之间共用
+ */
+public class FieldAccessor {
+
+    /**
+     * 默认每个实体类缓存的列组合个数
+     */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static volatile int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * 缓存 每个实体类一个，key:每一列的字段名称
+     */
+    private static final ClassValue<Map<List<String>, FieldAccessor>> CACHE = new ClassValue<Map<List<String>, FieldAccessor>>() {
+        @Override
+        protected Map<List<String>, FieldAccessor> computeValue(Class<?> type) {
+            return new LruCache();
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * 实体类
+     */
+    private final Class<?> type;
+    /**
+     * 按列下标存放的字段读取方法，没有对应字段(或者该列有子节点)的为null
+     */
+    private final MethodHandle[] getters;
+
+    private FieldAccessor(Class<?> type, MethodHandle[] getters) {
+        this.type = type;
+        this.getters = getters;
+    }
+
+    /**
+     * 获取实体类的字段读取器
+     *
+     * @param cls     实体类
+     * @param listCol 叶子列(顺序即读取时的下标)
+     * @return
+     */
+    public static FieldAccessor of(Class<?> cls, List<Column> listCol) {
+        List<String> key = new ArrayList<>(listCol.size());
+        for (Column column : listCol) {
+            key.add(column.isHasChildren() ? null : column.getFieldName());
+        }
+        Map<List<String>, FieldAccessor> cache = CACHE.get(cls);
+        synchronized (cache) {
+            FieldAccessor accessor = cache.get(key);
+            if (accessor != null) {
+                return accessor;
+            }
+        }
+        //在锁外反射，同时编译的结果相同，保留先放入的
+        FieldAccessor accessor = compile(cls, key);
+        synchronized (cache) {
+            FieldAccessor cached = cache.putIfAbsent(key, accessor);
+            return cached == null ? accessor : cached;
+        }
+    }
+
+    /**
+     * 设置每个实体类缓存的列组合个数，小于等于0时不缓存，超出的在下一次放入时淘汰
+     *
+     * @param size
+     */
+    public static void setCacheSize(int size) {
+        cacheSize = Math.max(0, size);
+    }
+
+    /**
+     * 按字段名称生成读取方法，和之前一样只读取本类声明的字段
+     *
+     * @param cls 实体类
+     * @param key 每一列的字段名称
+     * @return
+     */
+    private static FieldAccessor compile(Class<?> cls, List<String> key) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Field[] fields = cls.getDeclaredFields();
+        MethodHandle[] getters = new MethodHandle[key.size()];
+        for (int i = 0; i < getters.length; i++) {
+            String fieldName = key.get(i);
+            if (fieldName == null) {
+                continue;
+            }
+            for (Field f : fields) {
+                if (fieldName.equals(f.getName())) {
+                    try {
+                        f.setAccessible(true); // 设置些属性是可以访问的
+                        MethodHandle getter = lookup.unreflectGetter(f);
+                        if (Modifier.isStatic(f.getModifiers())) {
+                            getter = MethodHandles.dropArguments(getter, 0, Object.class);
+                        }
+                        getters[i] = getter.asType(GETTER_TYPE);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException("无法读取字段:" + cls.getName() + "." + fieldName, e);
+                    }
+                }
+            }
+        }
+        return new FieldAccessor(cls, getters);
+    }
+
+    /**
+     * 读取某一列的值
+     *
+     * @param bean  行内数据
+     * @param index 列的下标
+     * @return
+     */
+    public Object get(Object bean, int index) {
+        MethodHandle getter = this.getters[index];
+        if (getter == null) {
+            return null;
+        }
+        try {
+            return (Object) getter.invokeExact(bean);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * 按访问顺序排列的缓存 超过cacheSize时淘汰最久没有使用的列组合，在synchronized中使用
+     */
+    private static final class LruCache extends LinkedHashMap<List<String>, FieldAccessor> {
+
+        private static final long serialVersionUID = 1L;
+
+        private LruCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, FieldAccessor> eldest) {
+            return size() > cacheSize;
+        }
+    }
+}
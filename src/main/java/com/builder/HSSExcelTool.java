@@ -10,8 +10,13 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * excel处理工具
@@ -29,6 +34,10 @@ import java.util.*;
 @Data
 public class HSSExcelTool<T> {
 
+    /**
+     * 导入时日期单元格的格式
+     */
+    private static final DateFormats IMPORT_DATE_FORMATS = DateFormats.of(DateFormats.IMPORT_PATTERN);
     /**
      * excel 对象
      */
@@ -54,9 +63,25 @@ public class HSSExcelTool<T> {
      */
     private HSSFCellStyle styleBody;
     /**
-     * 日期格式化,默认yyyy-MM-dd HH:mm:ss
+     * 日期格式化,默认yyyy-MM-dd HH:mm:ss;按格式缓存的DateTimeFormatter,线程安全
+     */
+    private DateFormats dateFormats = DateFormats.defaults();
+    /**
+     * 是否按数据类型写入单元格(数值、布尔、日期写成excel原生类型),默认全部按文本写入
+     */
+    private boolean typedCell;
+    /**
+     * 单元格写值工具,第一次写入行内数据时创建
+     */
+    private CellValueWriter cellValueWriter;
+    /**
+     * 表头渲染工具,第一次写表头时创建
+     */
+    private HeaderRenderer headerRenderer;
+    /**
+     * sheet拆分策略,默认按xls每个sheet最多65536行(包含表头)
      */
-    private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private SheetSplitPolicy splitPolicy = SheetSplitPolicy.xls();
 
     /**
      * 无参数 初始化 对象
@@ -80,7 +105,7 @@ public class HSSExcelTool<T> {
         this.rowHeight = rowHeight;
         this.title = title;
         this.workbook = new HSSFWorkbook();
-        this.sdf = new SimpleDateFormat(dateFormat);
+        this.dateFormats = DateFormats.of(dateFormat);
         init(0);
     }
 
@@ -190,138 +215,177 @@ public class HSSExcelTool<T> {
     }
 
     /**
-     * 导出Excel,适用于web导出excel
+     * 导出表格 无返回 行内数据边读取边写入，适用于数据库游标等不能一次加载到内存的数据
      *
-     * @param sheet           excel
-     * @param data            行内数据
      * @param headerCellList 表头数据
-     * @param flag            只输出表头数据
-     * @param rowFlag         输出展示数据的结构(表头下面行的数据)
+     * @param rowIterator    行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
      * @throws Exception
      */
-    private void writeSheet(HSSFSheet sheet, List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
-        sheet.setDefaultColumnWidth(colWidth);
-        sheet.setDefaultRowHeightInPoints(rowHeight);
-        sheet = createHead(sheet, headerCellList.get(0).getTotalRow(), headerCellList.get(0).getTotalCol());
-        createHead(headerCellList, sheet, 0);
-        if (flag) {
-            writeSheetContent(headerCellList, data, sheet, headerCellList.get(0).getTotalRow(), rowFlag);
-        }
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, String filePath, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        save(this.workbook, filePath);
     }
 
     /**
-     * 拆分sheet，因为每个sheet不能超过65535，否则会报异常
+     * 导出表格 无返回 行内数据来自Stream，导出结束后关闭Stream
      *
-     * @param data            行内数据
      * @param headerCellList 表头数据
-     * @param flag            只输出表头数据
-     * @param rowFlag         输出展示数据的结构(表头下面行的数据)
+     * @param rowStream      行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
      * @throws Exception
      */
-    private void splitDataToSheets(List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
-        int dataCount = data.size();
-        int maxColumn = 65535;
-        int pieces = dataCount / maxColumn;
-        for (int i = 1; i <= pieces; i++) {
-            HSSFSheet sheet = this.workbook.createSheet(this.title + i);
-            List<T> subList = data.subList((i - 1) * maxColumn, i * maxColumn);
-            writeSheet(sheet, subList, headerCellList, flag, rowFlag);
+    public void exportExcel(List<Column> headerCellList, Stream<T> rowStream, String filePath, boolean flag) throws Exception {
+        try {
+            exportExcel(headerCellList, rowStream.iterator(), filePath, flag);
+        } finally {
+            rowStream.close();
         }
-        HSSFSheet sheet = this.workbook.createSheet(this.title + (pieces + 1));
-        writeSheet(sheet, data.subList(pieces * maxColumn, dataCount), headerCellList, flag, rowFlag);
     }
 
     /**
-     * 把数据写入到单元格
+     * 导出表格 无返回 行内数据分页获取，pageSupplier返回空页(或null)时结束
      *
      * @param headerCellList 表头数据
-     * @param datas           行内数据
-     * @param sheet           工作表（excel分页）
-     * @throws Exception void
-     */
-    private void writeSheetContent(List<Column> headerCellList, List<T> datas, HSSFSheet sheet, int rowIndex, boolean rowFlag) throws Exception {
-        HSSFRow row = null;
-        List<Column> listCol = new ArrayList<>();
-        rowFlag = false;
-        if (rowFlag) {//暂时没有用 后面扩展用
-            for (int i = 0, index = rowIndex; i < datas.size(); i++, index++) {
-                row = sheet.createRow(index);//创建行
-                for (int j = 0; j < headerCellList.size(); j++) {
-                    createColl(row, j, headerCellList.get(j).getFieldName(), datas.get(i));
-                }
-            }
-        } else {
-            getColumnList(headerCellList, listCol);
-            for (int i = 0, index = rowIndex; i < datas.size(); i++, index++) {
-                row = sheet.createRow(index);//创建行
-                for (int j = 0; j < listCol.size(); j++) {
-                    Column c = listCol.get(j);
-                    createCol(row, c, datas.get(i));
-                }
+     * @param pageSupplier   获取下一页行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, Supplier<List<T>> pageSupplier, String filePath, boolean flag) throws Exception {
+        exportExcel(headerCellList, new PageIterator<>(pageSupplier), filePath, flag);
+    }
 
-            }
-        }
+    /**
+     * 导出表格 直接写入调用方的输出流(例如servlet的response)，不经过内存中的字节数组，输出流由调用方关闭
+     *
+     * @param headerCellList 表头数据
+     * @param rowList        行内数据
+     * @param out            输出流
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, List<T> rowList, OutputStream out, boolean flag) throws Exception {
+        splitDataToSheets(rowList, headerCellList, flag, false);
+        save(this.workbook, out);
     }
 
     /**
-     * 根据list 来创建单元格 暂时没有用
+     * 导出表格 行内数据边读取边写入，直接写入调用方的输出流，输出流由调用方关闭
      *
-     * @param row
-     * @param j
-     * @param finame
-     * @param t
-     */
-    private void createColl(HSSFRow row, int j, String finame, T t) {
-        HSSFCell cell = row.createCell(j);  //创建单元格
-        cell.setCellStyle(this.styleBody); //设置单元格样式
-        String text = "";
-        if (t instanceof List) {
-            List<Map> temp = (List<Map>) t;
-            if (j >= temp.size()) {
-                return;
-            }
-            text = String.valueOf(temp.get(j).get(finame) == null ? "" : temp.get(j).get(finame));
-        }
-        HSSFRichTextString richString = new HSSFRichTextString(text);
-        cell.setCellValue(richString);
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param out            输出流
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        save(this.workbook, out);
     }
 
     /**
-     * 把column的columnList整理成一个list<column> 过滤表头的脏数据
+     * 导出表格 直接写入调用方的通道，通道由调用方关闭
      *
-     * @param list    表头数据
-     * @param listCol 返回新的list
+     * @param headerCellList 表头数据
+     * @param rowList        行内数据
+     * @param channel        输出通道
+     * @param flag           是否加载行数据
+     * @throws Exception
      */
-    private void getColumnList(List<Column> list, List<Column> listCol) {
-        for (Column column : list) {
-            if (column.getFieldName() != null) {
-                listCol.add(column);
-            }
-            List<Column> listChildren = column.getCellList();
-            if (listChildren.size() > 0) {
-                getColumnList(listChildren, listCol);
-            }
-        }
+    public void exportExcel(List<Column> headerCellList, List<T> rowList, WritableByteChannel channel, boolean flag) throws Exception {
+        exportExcel(headerCellList, rowList, Channels.newOutputStream(channel), flag);
+    }
+
+    /**
+     * 导出表格 有返回值 行内数据边读取边写入
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param flag           是否加载行数据
+     * @return
+     * @throws Exception
+     */
+    public InputStream exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        return save(this.workbook);
+    }
+
+    /**
+     * 返回workbook 行内数据边读取边写入
+     *
+     * @param listTpamscolumn 表头数据
+     * @param rowIterator     行内数据
+     * @param flag            是否写入行内数据
+     * @return
+     * @throws Exception
+     */
+    public HSSFWorkbook exportWorkbook(List<Column> listTpamscolumn, Iterator<T> rowIterator, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, listTpamscolumn, flag);
+        return this.workbook;
+    }
+
+    /**
+     * 拆分sheet，每个sheet的大小由拆分策略决定(默认按xls的最大行数65536，包含表头)
+     *
+     * @param data            行内数据
+     * @param headerCellList 表头数据
+     * @param flag            只输出表头数据
+     * @param rowFlag         输出展示数据的结构(表头下面行的数据) 暂时没有用
+     * @throws Exception
+     */
+    private void splitDataToSheets(List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
+        splitDataToSheets(data.iterator(), headerCellList, flag);
+    }
+
+    /**
+     * 拆分sheet，行内数据边读取边写入，当前sheet达到拆分策略的上限且还有数据时新建sheet
+     *
+     * @param data           行内数据
+     * @param headerCellList 表头数据
+     * @param flag           只输出表头数据
+     * @throws Exception
+     */
+    private void splitDataToSheets(Iterator<T> data, List<Column> headerCellList, boolean flag) throws Exception {
+        ExportBackend backend = new PoiExportBackend(this.workbook, getHeaderRenderer(), getCellValueWriter(),
+                this.styleBody, this.colWidth, this.rowHeight, null);
+        new ExportPipeline<T>(headerCellList, this.title, this.splitPolicy, this.dateFormats, this.typedCell, null)
+                .write(backend, data, flag);
     }
 
     /**
      * 保存Excel到InputStream，此方法适合web导出excel
      *
+     * InputStream直接读取写入时的字节数组，不再复制一份
+     *
      * @param workbook
      * @return
      */
     private InputStream save(HSSFWorkbook workbook) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DirectByteArrayOutputStream bos = new DirectByteArrayOutputStream();
         try {
             workbook.write(bos);
-            InputStream bis = new ByteArrayInputStream(bos.toByteArray());
-            return bis;
+            return bos.toInputStream();
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 保存Excel到调用方的输出流，不关闭输出流
+     *
+     * @param workbook
+     * @param out
+     * @throws IOException
+     */
+    private void save(HSSFWorkbook workbook, OutputStream out) throws IOException {
+        workbook.write(out);
+        out.flush();
+    }
+
     /**
      * 保存excel到本机指定的路径
      *
@@ -382,54 +446,90 @@ public class HSSExcelTool<T> {
      * @throws Exception
      */
     public void createCol(HSSFRow row, Column tpamscolumn, T v) throws Exception {
+        createCol(row, tpamscolumn, v, new RowValueReader(Collections.singletonList(tpamscolumn)), 0);
+    }
+
+    /**
+     * 创建单元格 单元格的值通过预先整理好的读取器按下标读取
+     *
+     * @param row         Excel对应的行
+     * @param tpamscolumn 当前单元格对象
+     * @param v
+     * @param reader      行内数据读取器
+     * @param index       当前单元格在读取器中的下标
+     * @return 写入的值
+     * @throws Exception
+     */
+    private Object createCol(HSSFRow row, Column tpamscolumn, T v, RowValueReader reader, int index) throws Exception {
         HSSFCell cell = row.createCell(tpamscolumn.getCol());  //创建单元格
-        cell.setCellStyle(this.styleBody); //设置单元格样式
-        final Object[] value = {null};
-        if (v instanceof Map) {
-            Map m = (Map) v;
-            m.forEach((k, val) -> {
-                if (k.equals(tpamscolumn.getFieldName()) && !tpamscolumn.isHasChildren()) {
-                    value[0] = val;
-                }
-            });
-        } else {
-            Class<?> cls = v.getClass();// 拿到该类
-            Field[] fields = cls.getDeclaredFields();// 获取实体类的所有属性，返回Field数组
-            for (int i = 0; i < fields.length; i++) {
-                Field f = fields[i];
-                f.setAccessible(true); // 设置些属性是可以访问的
-                if (tpamscolumn.getFieldName().equals(f.getName()) && !tpamscolumn.isHasChildren())// && !tpamscolumn.isHasChilren()
-                {
-                    value[0] = f.get(v);
-                }
-                if (value[0] instanceof Date) {
-                    value[0] = parseDate((Date) value[0]);
-                }
-            }
+        Object value = reader.get(v, index);
+        if (!this.typedCell && DateFormats.isDate(value)) {
+            value = parseDate(value);
         }
-        if (value[0] != null) {
-            HSSFRichTextString richString = new HSSFRichTextString(value[0].toString());
-            cell.setCellValue(richString);
+        getCellValueWriter().write(cell, value, this.styleBody); //设置单元格样式和值
+        return value;
+    }
+
+    /**
+     * 表头渲染工具,第一次写表头时创建,拆分出的多个sheet共用
+     *
+     * @return
+     */
+    public HeaderRenderer getHeaderRenderer() {
+        if (this.headerRenderer == null) {
+            this.headerRenderer = new HeaderRenderer(this.workbook, this.styleHead, true);
         }
+        return this.headerRenderer;
+    }
 
+    /**
+     * 单元格写值工具
+     *
+     * @return
+     */
+    public CellValueWriter getCellValueWriter() {
+        if (this.cellValueWriter == null) {
+            this.cellValueWriter = new CellValueWriter(this.workbook, this.dateFormats.getPattern(), this.typedCell);
+        }
+        return this.cellValueWriter;
     }
 
     /**
-     * 时间转换
+     * 时间转换 支持Date、Calendar和java.time的日期类型
      *
      * @param date
      * @return String
      */
-    private String parseDate(Date date) {
+    private String parseDate(Object date) {
         String dateStr = "";
         try {
-            dateStr = this.sdf.format(date);
+            dateStr = this.dateFormats.format(date);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return dateStr;
     }
 
+    /**
+     * 日期格式,兼容之前的SimpleDateFormat设置,请使用getDateFormats
+     *
+     * @return 新的SimpleDateFormat,修改它不会影响导出
+     */
+    @Deprecated
+    public SimpleDateFormat getSdf() {
+        return this.dateFormats.newSimpleDateFormat();
+    }
+
+    /**
+     * 日期格式,兼容之前的SimpleDateFormat设置,请使用setDateFormats
+     *
+     * @param sdf 复制一份使用，保留其中的日期格式、时区和Locale
+     */
+    @Deprecated
+    public void setSdf(SimpleDateFormat sdf) {
+        this.dateFormats = DateFormats.from(sdf);
+    }
+
 
     /**
      * 根据数据的行数和列数，在excel创建单元格cell
@@ -534,10 +634,7 @@ public class HSSExcelTool<T> {
                 i++;
             }
         }
-        setParm(lc, "0");//处理一下
-        List<Column> s = TreeTool.buildByRecursive(lc, "0");
-        setColNum(lc, s, s);
-        return s;
+        return CompiledHeader.compile(lc, "0").getColumns();
     }
 
     /**
@@ -554,6 +651,38 @@ public class HSSExcelTool<T> {
      * @throws Exception
      */
     public List<Column> columnTransformer(List<T> list, String id, String pid, String content, String fieldName, String rootid) throws Exception {
+        return compileHeader(list, id, pid, content, fieldName, rootid).getColumns();
+    }
+
+    /**
+     * 编译表头 同样的表头定义直接使用缓存的布局，适合同一个报表反复导出
+     * 参数和columnTransformer一致，getColumns()的结果可以直接传给exportExcel
+     *
+     * @param list      需要转换的数据
+     * @param id        当前节点id 字段的名称  主键
+     * @param pid       父节点id 字段的名称
+     * @param content   填写表头单元格内容的 字段名称
+     * @param fieldName 填写行内数据对的 字段名称
+     * @param rootid    rootid的值
+     * @return
+     * @throws Exception
+     */
+    public CompiledHeader compileHeader(List<T> list, String id, String pid, String content, String fieldName, String rootid) throws Exception {
+        return CompiledHeader.compile(toColumnList(list, id, pid, content, fieldName), rootid);
+    }
+
+    /**
+     * 把表头数据转换成一条一条的column对象
+     *
+     * @param list      需要转换的数据
+     * @param id        当前节点id 字段的名称  主键
+     * @param pid       父节点id 字段的名称
+     * @param content   填写表头单元格内容的 字段名称
+     * @param fieldName 填写行内数据对的 字段名称
+     * @return
+     * @throws Exception
+     */
+    private List<Column> toColumnList(List<T> list, String id, String pid, String content, String fieldName) throws Exception {
         List<Column> lc = new ArrayList<>();
         if (list.get(0) instanceof Map) {
             for (Map m : (List<Map>) list) {
@@ -600,10 +729,7 @@ public class HSSExcelTool<T> {
                 lc.add(tpamscolumn);
             }
         }
-        setParm(lc, rootid);//处理一下
-        List<Column> s = TreeTool.buildByRecursive(lc, rootid);
-        setColNum(lc, s, s);
-        return s;
+        return lc;
     }
 
     /**
@@ -612,35 +738,7 @@ public class HSSExcelTool<T> {
      * @param list
      */
     public static void setParm(List<Column> list, String rootid) {
-        int row = 0;//excel第几行
-        int rLen = 0; //excel 跨多少行
-        int totalRow = TreeTool.getMaxStep(list);
-        int totalCol = TreeTool.getDownChildren(list, rootid);
-        for (int i = 0; i < list.size(); i++) {
-            Column poit = list.get(i);
-            int tree_step = TreeTool.getTreeStep(list, poit.getPid(), 0);//往上遍历tree
-            poit.setTreeStep(tree_step);
-            poit.setRow(tree_step);//设置第几行
-            //判断是否有节点
-            boolean hasCh = TreeTool.hasChild(list, poit);
-            poit.setHasChildren(hasCh);
-            if (hasCh) {
-                poit.setRLen(0);//设置跨多少行
-            } else {
-                if (tree_step < totalRow) {
-                    rLen = totalRow - tree_step;
-                }
-                poit.setRLen(rLen);
-            }
-//            boolean flag=false;//控制只有root 节点才有总的行数信息
-//            if(rootid == null && rootid == poit.getId() )flag = true;
-//            if(rootid != null && rootid.equals(poit.getId()))flag = true;
-//            if(flag){
-//
-//            }
-            poit.setTotalRow(totalRow);
-            poit.setTotalCol(totalCol);
-        }
+        new HeaderLayout(list).setParm(rootid);
     }
 
     /**
@@ -650,28 +748,7 @@ public class HSSExcelTool<T> {
      * @param treeList 转成tree结构的list
      */
     public static void setColNum(List<Column> list, List<Column> treeList, List<Column> flist) {
-//        int col = pcIndex;//excel第几列
-//        int cLen ;//xcel跨多少列
-        List<Column> new_list = new ArrayList<>();//新的遍历list
-        for (int i = 0; i < treeList.size(); i++) {
-            Column poit = treeList.get(i);
-//            String temp_id = TreeTool.getStepFid(list,poit.getId() ,1);
-            int col = TreeTool.getFCol(list, poit.getPid()).getCol();
-            int brotherCol = TreeTool.getBrotherChilNum(list, poit);
-            poit.setCol(col + brotherCol);
-            int cLen = TreeTool.getDownChildren(list, poit.getId());
-            if (cLen <= 1) {
-                cLen = 0;
-            }
-//            else  cLen--;
-            poit.setCLen(cLen);//设置跨多少列
-            if (poit.getCellList().size() > 0) {
-                new_list.addAll(poit.getCellList());
-            }
-        }
-        if (new_list.size() > 0) {
-            setColNum(list, new_list, flist);
-        }
+        new HeaderLayout(list).setColNum(treeList);
     }
 //========上部分是导出excel的使用（生成excel），下部分是解析excel，由于excel导入==================================================================================================================================
 
@@ -690,9 +767,7 @@ public class HSSExcelTool<T> {
                 case FORMULA: {
                     // 判断当前的cell是否为Date
                     if (HSSFDateUtil.isCellDateFormatted(cell)) {
-                        Date date = cell.getDateCellValue();
-                        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                        cellvalue = sdf.format(date);
+                        cellvalue = IMPORT_DATE_FORMATS.format(cell.getLocalDateTimeCellValue());
                     } else { // 如果是纯数字
                         cellvalue = String.valueOf(cell.getNumericCellValue());
                     }
@@ -766,66 +841,37 @@ public class HSSExcelTool<T> {
     }
 
     /**
-     * 判断指定的单元格是否是合并单元格
-     *
-     * @param sheet
-     * @param row    行下标
-     * @param column 列下标
-     * @return
-     */
-    private boolean isMergedRegion(Sheet sheet, int row, int column) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress range = sheet.getMergedRegion(i);
-            int firstColumn = range.getFirstColumn();
-            int lastColumn = range.getLastColumn();
-            int firstRow = range.getFirstRow();
-            int lastRow = range.getLastRow();
-            if (row >= firstRow && row <= lastRow) {
-                if (column >= firstColumn && column <= lastColumn) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
-    /**
-     * 获取合并单元格的值
+     * 获取合并单元格的值 左上角单元格的值读取一次后缓存
      *
      * @param sheet
-     * @param row    行下标
-     * @param column 列下标
+     * @param merged 工作表的合并单元格索引
+     * @param region 合并范围的下标
      * @return
      */
-    private String getMergedRegionValue(Sheet sheet, int row, int column) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress ca = sheet.getMergedRegion(i);
-            int firstColumn = ca.getFirstColumn();
-            int lastColumn = ca.getLastColumn();
-            int firstRow = ca.getFirstRow();
-            int lastRow = ca.getLastRow();
-            if (row >= firstRow && row <= lastRow) {
-                if (column >= firstColumn && column <= lastColumn) {
-                    Row fRow = sheet.getRow(firstRow);
-                    Cell fCell = fRow.getCell(firstColumn);
-                    return getStringCellValue(fCell);
-                }
-            }
+    private String getMergedRegionValue(Sheet sheet, MergedRegionIndex merged, int region) {
+        String value = merged.getValue(region);
+        if (value == null) {
+            Row fRow = sheet.getRow(merged.getFirstRow(region));
+            value = fRow == null ? "" : getStringCellValue(fRow.getCell(merged.getFirstColumn(region)));
+            merged.setValue(region, value);
         }
-        return "";
+        return value;
     }
 
     /**
      * 获取excel的值 返回的 List<List<String>>的数据结构
+     * xlsx和xls文件使用ExcelStreamReader逐行解析，不加载整个workbook，结果相同
      *
      * @param fileUrl  文件路径
      * @param sheetNum 工作表（第几分页[1,2,3.....]）
      * @return List<List < String>>
      */
     public List<List<String>> getExcelValues(String fileUrl, int sheetNum) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getValues(sheetNum);
+            }
+        }
         List<List<String>> values = new ArrayList<List<String>>();
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
@@ -834,6 +880,7 @@ public class HSSExcelTool<T> {
         //int sheetCount1= workbook.getNumberOfSheets();
         Sheet sheet = workbook.getSheetAt(sheetCount); //读取第几个工作表sheet
         int rowNum = sheet.getLastRowNum();//有多少行
+        MergedRegionIndex merged = MergedRegionIndex.of(sheet);//合并单元格的索引，每个工作表建一次
         for (int i = 1; i <= rowNum; i++) {
             Row row = sheet.getRow(i);//第i行
             if (row == null) {//过滤空行
@@ -844,13 +891,10 @@ public class HSSExcelTool<T> {
             for (int j = 0; j < colCount; j++) {//第j列://+1是因为最后一列是空 也算进去
                 Cell cell = row.getCell(j);
                 String cellValue;
-                boolean isMerge = false;
-                if (cell != null) {
-                    isMerge = isMergedRegion(sheet, i, cell.getColumnIndex());
-                }
+                int region = cell == null ? -1 : merged.find(i, cell.getColumnIndex());
                 //判断是否具有合并单元格
-                if (isMerge) {
-                    cellValue = getMergedRegionValue(sheet, row.getRowNum(), cell.getColumnIndex());
+                if (region >= 0) {
+                    cellValue = getMergedRegionValue(sheet, merged, region);
                 } else {
                     cellValue = getStringCellValue(cell);
                 }
@@ -883,12 +927,18 @@ public class HSSExcelTool<T> {
 
     /**
      * 根据sheet数获取excel的值 返回List<List<Map<String,String>>>的数据结构
+     * xlsx和xls文件使用ExcelStreamReader逐行解析，不加载整个workbook，结果相同
      *
      * @param fileUrl  文件路径
      * @param sheetNum 工作表（第几分页[1,2,3.....]）
      * @return List<List < Map < String, String>>>
      */
     public List<List<Map<String, String>>> getExcelMapVal(String fileUrl, int sheetNum) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getMapValues(sheetNum);
+            }
+        }
         List<List<Map<String, String>>> values = new ArrayList<List<Map<String, String>>>();
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
@@ -897,6 +947,7 @@ public class HSSExcelTool<T> {
         //int sheetCount1= workbook.getNumberOfSheets();
         Sheet sheet = workbook.getSheetAt(sheetCount); //读取第几个工作表sheet
         int rowNum = sheet.getLastRowNum();//有多少行
+        MergedRegionIndex merged = MergedRegionIndex.of(sheet);//合并单元格的索引，每个工作表建一次
         Row rowTitle = sheet.getRow(0);//第i行
         int colCount = sheet.getRow(0).getLastCellNum();//用表头去算有多少列，不然从下面的行计算列的话，空的就不算了
         for (int i = 1; i <= rowNum; i++) {
@@ -911,13 +962,10 @@ public class HSSExcelTool<T> {
                 Cell cellTitle = rowTitle.getCell(j);
                 String cellValue;
                 String cellKey = getStringCellValue(cellTitle);
-                boolean isMerge = false;
-                if (cell != null) {
-                    isMerge = isMergedRegion(sheet, i, cell.getColumnIndex());
-                }
+                int region = cell == null ? -1 : merged.find(i, cell.getColumnIndex());
                 //判断是否具有合并单元格
-                if (isMerge) {
-                    cellValue = getMergedRegionValue(sheet, row.getRowNum(), cell.getColumnIndex());
+                if (region >= 0) {
+                    cellValue = getMergedRegionValue(sheet, merged, region);
                 } else {
                     cellValue = getStringCellValue(cell);
                 }
@@ -929,6 +977,53 @@ public class HSSExcelTool<T> {
         return values;
     }
 
+    /**
+     * 根据sheet数获取excel的值 返回List<ImportRow>的数据结构
+     * 读取的行和getExcelMapVal相同(跳过空行)，每一行只保存值的数组，所有行共用一个 表头 -> 列 的字典，
+     * 按表头取值用row.get(表头)或row.asMap()，需要getExcelMapVal的结构时用row.toCellMaps()
+     *
+     * @param fileUrl  文件路径
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @return List<ImportRow>
+     */
+    public List<ImportRow> getExcelRows(String fileUrl, int sheetNum) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            return reader.getImportRows(sheetNum);
+        }
+    }
+
+    /**
+     * 分批读取excel 每读够batchSize行调用一次handler.onRowBatch，内存中只有一批行，适合分批写入数据库
+     * 读取的行和getExcelRows相同
+     *
+     * @param fileUrl   文件路径
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readExcelRows(String fileUrl, int sheetNum, int batchSize, ImportRowHandler handler) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            reader.readBatches(sheetNum, batchSize, handler);
+        }
+    }
+
+    /**
+     * 分批读取excel handler.onRowBatch在线程池中调用，处理上一批的同时读取下一批，批次按顺序依次处理
+     *
+     * @param fileUrl   文件路径
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @param executor  处理批次的线程池
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readExcelRows(String fileUrl, int sheetNum, int batchSize, ImportRowHandler handler, ExecutorService executor) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            reader.readBatches(sheetNum, batchSize, handler, executor);
+        }
+    }
+
     /**
      * 获取当前excel的工作表sheet总数
      *
@@ -937,6 +1032,11 @@ public class HSSExcelTool<T> {
      * @throws Exception
      */
     public int hasSheetCount(String fileUrl) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getSheetCount();
+            }
+        }
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
         Workbook workbook = WorkbookFactory.create(is);
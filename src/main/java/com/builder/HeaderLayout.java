@@ -0,0 +1,276 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 表头布局计算 先按id、pid建立索引(id->节点、pid->子节点)，再计算每个单元格的深度、叶子数、行列位置和跨行跨列数
+ * 计算结果和TreeTool逐个节点遍历整个list的方式一致(按id查找时取list中第一个匹配的节点，兄弟节点按list中的顺序)，
+ * 每个节点的深度和叶子数只计算一次，整体是线性的，几千列的表头也不会变慢
+ * 一次布局使用一个，不是线程安全的
+ */
+public class HeaderLayout {
+
+    /**
+     * 所有的list数据，一条一条
+     */
+    private final List<Column> list;
+    /**
+     * id -> list中第一个该id的节点
+     */
+    private final Map<String, Column> nodeById = new HashMap<>();
+    /**
+     * id -> list中第一个该id的节点的下标
+     */
+    private final Map<String, Integer> indexById = new HashMap<>();
+    /**
+     * pid -> 子节点(按list中的顺序)
+     */
+    private final Map<String, Siblings> childrenByPid = new HashMap<>();
+    /**
+     * 深度缓存 key:id
+     */
+    private final Map<String, Integer> depths = new HashMap<>();
+    /**
+     * 叶子节点个数缓存 key:id
+     */
+    private final Map<String, Integer> leaves = new HashMap<>();
+
+    public HeaderLayout(List<Column> list) {
+        this.list = list;
+        for (int i = 0; i < list.size(); i++) {
+            Column column = list.get(i);
+            if (!nodeById.containsKey(column.getId())) {
+                nodeById.put(column.getId(), column);
+                indexById.put(column.getId(), i);
+            }
+            childrenByPid.computeIfAbsent(column.getPid(), k -> new Siblings()).add(column, i);
+        }
+    }
+
+    /**
+     * 计算表头布局 设置行信息、建树、设置列信息
+     *
+     * @param list   所有的list数据，一条一条
+     * @param rootid 根节点id
+     * @return 转成tree结构的list
+     */
+    public static List<Column> layout(List<Column> list, String rootid) {
+        HeaderLayout layout = new HeaderLayout(list);
+        layout.setParm(rootid);
+        List<Column> tree = layout.buildTree(rootid);
+        layout.setColNum(tree);
+        return tree;
+    }
+
+    /**
+     * 设置基础的参数 第几行、跨多少行、是否有子节点、总行数、总列数
+     *
+     * @param rootid 根节点id
+     */
+    public void setParm(String rootid) {
+        int totalRow = 0;
+        for (Column column : list) {
+            totalRow = Math.max(totalRow, getTreeStep(column.getId()));
+        }
+        int totalCol = getDownChildren(rootid);
+        int rLen = 0; //excel 跨多少行
+        for (Column poit : list) {
+            int treeStep = getTreeStep(poit.getPid());//往上遍历tree
+            poit.setTreeStep(treeStep);
+            poit.setRow(treeStep);//设置第几行
+            boolean hasCh = hasChild(poit);
+            poit.setHasChildren(hasCh);
+            if (hasCh) {
+                poit.setRLen(0);//设置跨多少行
+            } else {
+                //id重复时节点的深度可能不小于总行数，和之前一样沿用上一个叶子节点的跨行数
+                if (treeStep < totalRow) {
+                    rLen = totalRow - treeStep;
+                }
+                poit.setRLen(rLen);
+            }
+            poit.setTotalRow(totalRow);
+            poit.setTotalCol(totalCol);
+        }
+    }
+
+    /**
+     * 建树 先找id等于rootid的节点，没有时找pid等于rootid的节点
+     *
+     * @param rootid 根节点id
+     * @return 转成tree结构的list
+     */
+    public List<Column> buildTree(String rootid) {
+        List<Column> trees = new ArrayList<>();
+        for (Column treeNode : list) {
+            if (Objects.equals(rootid, treeNode.getId())) {
+                trees.add(findChildren(treeNode));
+            }
+        }
+        if (trees.isEmpty()) {
+            for (Column treeNode : list) {
+                if (Objects.equals(rootid, treeNode.getPid())) {
+                    trees.add(findChildren(treeNode));
+                }
+            }
+        }
+        return trees;
+    }
+
+    /**
+     * 设置第几列、跨多少列 按层遍历，父节点的列先于子节点计算
+     *
+     * @param treeList 转成tree结构的list
+     */
+    public void setColNum(List<Column> treeList) {
+        List<Column> level = treeList;
+        while (!level.isEmpty()) {
+            List<Column> nextLevel = new ArrayList<>();
+            for (Column poit : level) {
+                Column parent = nodeById.get(poit.getPid());
+                int col = parent == null ? 0 : parent.getCol();
+                poit.setCol(col + getBrotherChilNum(poit));
+                int cLen = getDownChildren(poit);
+                poit.setCLen(cLen <= 1 ? 0 : cLen);//设置跨多少列
+                nextLevel.addAll(poit.getCellList());
+            }
+            level = nextLevel;
+        }
+    }
+
+    /**
+     * 获取某节点的深度 id为空或者找不到节点时为0
+     *
+     * @param id
+     * @return
+     */
+    private int getTreeStep(String id) {
+        if (id == null || "".equals(id)) {
+            return 0;
+        }
+        Integer step = depths.get(id);
+        if (step == null) {
+            Column column = nodeById.get(id);
+            step = column == null ? 0 : getTreeStep(column.getPid()) + 1;
+            depths.put(id, step);
+        }
+        return step;
+    }
+
+    /**
+     * 获取最底部子节点的个数 所有叶子节点个数
+     *
+     * @param id
+     * @return
+     */
+    private int getDownChildren(String id) {
+        Integer sum = leaves.get(id);
+        if (sum == null) {
+            sum = 0;
+            Siblings children = childrenByPid.get(id);
+            if (children != null) {
+                for (Column column : children.nodes) {
+                    sum += hasChild(column) ? getDownChildren(column.getId()) : 1;
+                }
+            }
+            leaves.put(id, sum);
+        }
+        return sum;
+    }
+
+    private int getDownChildren(Column column) {
+        return column.getId() == null ? 0 : getDownChildren(column.getId());
+    }
+
+    /**
+     * 判断是否有子节点
+     *
+     * @param column
+     * @return
+     */
+    private boolean hasChild(Column column) {
+        return column.getId() != null && childrenByPid.containsKey(column.getId());
+    }
+
+    /**
+     * 获取排在前面的兄弟节点占的列数 (list中在第一个同id节点之前的兄弟节点)
+     *
+     * @param column 当前节点
+     * @return
+     */
+    private int getBrotherChilNum(Column column) {
+        Siblings siblings = childrenByPid.get(column.getPid());
+        Integer end = indexById.get(column.getId());
+        if (siblings == null || end == null) {
+            return 0;
+        }
+        return siblings.widthBefore(end);
+    }
+
+    /**
+     * 递归查找子节点
+     *
+     * @param treeNode
+     * @return
+     */
+    private Column findChildren(Column treeNode) {
+        Siblings children = treeNode.getId() == null ? null : childrenByPid.get(treeNode.getId());
+        if (children != null) {
+            for (Column it : children.nodes) {
+                if (treeNode.getCellList() == null) {
+                    treeNode.setCellList(new ArrayList<Column>());
+                }
+                treeNode.getCellList().add(findChildren(it));
+            }
+        }
+        return treeNode;
+    }
+
+    /**
+     * 同一个父节点下的子节点 按list中的顺序
+     */
+    private class Siblings {
+
+        private final List<Column> nodes = new ArrayList<>();
+        private int[] indexes = new int[4];
+        /**
+         * widths[k]为前k个节点占的列数之和，第一次使用时计算
+         */
+        private int[] widths;
+
+        private void add(Column column, int index) {
+            if (nodes.size() == indexes.length) {
+                indexes = Arrays.copyOf(indexes, indexes.length * 2);
+            }
+            indexes[nodes.size()] = index;
+            nodes.add(column);
+        }
+
+        /**
+         * list下标小于end的兄弟节点占的列数，每个节点至少占一列
+         *
+         * @param end
+         * @return
+         */
+        private int widthBefore(int end) {
+            if (widths == null) {
+                widths = new int[nodes.size() + 1];
+                for (int k = 0; k < nodes.size(); k++) {
+                    widths[k + 1] = widths[k] + Math.max(1, getDownChildren(nodes.get(k)));
+                }
+            }
+            int count = Arrays.binarySearch(indexes, 0, nodes.size(), end);
+            if (count < 0) {
+                count = -count - 1;
+            }
+            return widths[count];
+        }
+    }
+}
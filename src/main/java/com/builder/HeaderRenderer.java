@@ -0,0 +1,247 @@
+package com.builder;
+
+import com.entity.Column;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 表头渲染 只创建需要的单元格(每个表头单元格和合并区域边框上的单元格)，不再预先创建totalRow x totalCol的所有单元格；
+ * 边框按单元格在合并区域中的位置(下/左/右)预先计算好样式，一次写入，不再对每个区域调用RegionUtil逐个单元格改样式
+ * 同一个表头拆分成多个sheet时，单元格的位置和样式只计算一次
+ * 一个workbook使用一个，不是线程安全的
+ */
+public class HeaderRenderer {
+
+    private static final int BORDER_BOTTOM = 1;
+    private static final int BORDER_LEFT = 2;
+    private static final int BORDER_RIGHT = 4;
+
+    private final Workbook workbook;
+    /**
+     * 表头样式
+     */
+    private final CellStyle styleHead;
+    /**
+     * 没有合并的单元格是否也加边框
+     */
+    private final boolean borderSingleCell;
+    /**
+     * 带边框的样式缓存 key:是否表头单元格 + 边框位置
+     */
+    private final Map<Integer, CellStyle> styles = new HashMap<>();
+    /**
+     * 上一次渲染的表头和计算好的单元格，同一个表头再次渲染时直接使用
+     */
+    private List<Column> lastColumns;
+    private Plan lastPlan;
+
+    /**
+     * @param workbook         创建样式的workbook
+     * @param styleHead        表头样式
+     * @param borderSingleCell 没有合并的单元格是否也加边框
+     */
+    public HeaderRenderer(Workbook workbook, CellStyle styleHead, boolean borderSingleCell) {
+        this.workbook = workbook;
+        this.styleHead = styleHead;
+        this.borderSingleCell = borderSingleCell;
+    }
+
+    /**
+     * 把表头写入sheet
+     *
+     * @param sheet          工作表
+     * @param headerCellList 表头数据
+     */
+    public void render(Sheet sheet, List<Column> headerCellList) {
+        if (headerCellList != lastColumns) {
+            lastPlan = new Plan(headerCellList);
+            lastColumns = headerCellList;
+        }
+        Plan plan = lastPlan;
+        //按行号顺序创建行，流式导出时行必须按顺序创建
+        Row[] rows = new Row[plan.rowCount];
+        for (int i = 0; i < rows.length; i++) {
+            Row row = sheet.getRow(i);
+            rows[i] = row == null ? sheet.createRow(i) : row;
+        }
+        for (int i = 0; i < plan.size; i++) {
+            Cell cell = rows[plan.rows[i]].createCell(plan.cols[i]);
+            CellStyle style = getStyle(plan.heads[i], plan.borders[i]);
+            if (style != null) {
+                cell.setCellStyle(style);
+            }
+            if (plan.texts[i] != null) {
+                cell.setCellValue(plan.texts[i]);
+            }
+        }
+        for (int[] region : plan.regions) {
+            //区域在计算时已经检查过不重叠
+            sheet.addMergedRegionUnsafe(new CellRangeAddress(region[0], region[1], region[2], region[3]));
+        }
+    }
+
+    /**
+     * 获取单元格样式 表头单元格以表头样式为基础，其它单元格以默认样式为基础，再加上对应位置的边框
+     *
+     * @param head    是否表头单元格
+     * @param borders 边框位置
+     * @return 默认样式时返回null
+     */
+    private CellStyle getStyle(boolean head, int borders) {
+        if (borders == 0) {
+            return head ? styleHead : null;
+        }
+        int key = (head ? 8 : 0) | borders;
+        CellStyle style = styles.get(key);
+        if (style == null) {
+            style = workbook.createCellStyle();
+            if (head) {
+                style.cloneStyleFrom(styleHead);
+            }
+            if ((borders & BORDER_BOTTOM) != 0) {
+                style.setBorderBottom(BorderStyle.THIN);
+            }
+            if ((borders & BORDER_LEFT) != 0) {
+                style.setBorderLeft(BorderStyle.THIN);
+            }
+            if ((borders & BORDER_RIGHT) != 0) {
+                style.setBorderRight(BorderStyle.THIN);
+            }
+            styles.put(key, style);
+        }
+        return style;
+    }
+
+    /**
+     * 一个表头需要创建的单元格 按创建顺序存放
+     */
+    private class Plan {
+
+        private int size;
+        private int[] rows = new int[16];
+        private int[] cols = new int[16];
+        private int[] borders = new int[16];
+        private boolean[] heads = new boolean[16];
+        private String[] texts = new String[16];
+        /**
+         * 合并单元格区域 {开始行, 结束行, 开始列, 结束列}
+         */
+        private final List<int[]> regions = new ArrayList<>();
+        private int rowCount;
+        /**
+         * 位置 -> 单元格下标，只在计算时使用
+         */
+        private Map<Long, Integer> index = new HashMap<>();
+        /**
+         * 已经被合并区域占用的位置，用于检查区域是否重叠，只在计算时使用
+         */
+        private Set<Long> merged = new HashSet<>();
+
+        private Plan(List<Column> headerCellList) {
+            rowCount = headerCellList.isEmpty() ? 0 : headerCellList.get(0).getTotalRow();
+            add(headerCellList, 0);
+            index = null;
+            merged = null;
+        }
+
+        /**
+         * 按之前createHead的顺序计算 先设置表头单元格(会覆盖之前的边框)，再给区域的下、左、右边加边框
+         *
+         * @param cellList 表头数据
+         * @param rowIndex 当前Excel的第几行
+         */
+        private void add(List<Column> cellList, int rowIndex) {
+            for (Column column : cellList) {
+                int r = column.getRow();
+                int c = column.getCol();
+                int endR = column.getRLen() > 0 ? r + column.getRLen() - 1 : r;
+                int endC = column.getCLen() > 0 ? c + column.getCLen() - 1 : c;
+
+                int anchor = cell(rowIndex, c);
+                heads[anchor] = true;
+                //同一位置再次作为表头单元格时和之前一样重新设置样式，清除已有的边框
+                borders[anchor] = 0;
+                texts[anchor] = column.getContent();
+
+                boolean merge = endR > r || endC > c;
+                if (merge) {
+                    addRegion(r, endR, c, endC);
+                }
+                if (merge || borderSingleCell) {
+                    //cell()可能扩容数组，先取下标再访问borders
+                    for (int j = c; j <= endC; j++) {
+                        int k = cell(endR, j);
+                        borders[k] |= BORDER_BOTTOM;
+                    }
+                    for (int i = r; i <= endR; i++) {
+                        int k = cell(i, c);
+                        borders[k] |= BORDER_LEFT;
+                    }
+                    for (int i = r; i <= endR; i++) {
+                        int k = cell(i, endC);
+                        borders[k] |= BORDER_RIGHT;
+                    }
+                }
+                if (column.isHasChildren()) {
+                    add(column.getCellList(), r + 1);
+                }
+            }
+        }
+
+        private void addRegion(int r, int endR, int c, int endC) {
+            for (int i = r; i <= endR; i++) {
+                for (int j = c; j <= endC; j++) {
+                    if (!merged.add(key(i, j))) {
+                        throw new IllegalStateException("表头合并单元格重叠:" + new CellRangeAddress(r, endR, c, endC).formatAsString());
+                    }
+                }
+            }
+            regions.add(new int[]{r, endR, c, endC});
+        }
+
+        /**
+         * 获取某个位置的单元格下标，没有时新建
+         *
+         * @param row
+         * @param col
+         * @return
+         */
+        private int cell(int row, int col) {
+            Long key = key(row, col);
+            Integer i = index.get(key);
+            if (i != null) {
+                return i;
+            }
+            if (size == cols.length) {
+                int length = size * 2;
+                rows = Arrays.copyOf(rows, length);
+                cols = Arrays.copyOf(cols, length);
+                borders = Arrays.copyOf(borders, length);
+                heads = Arrays.copyOf(heads, length);
+                texts = Arrays.copyOf(texts, length);
+            }
+            rows[size] = row;
+            cols[size] = col;
+            rowCount = Math.max(rowCount, row + 1);
+            index.put(key, size);
+            return size++;
+        }
+
+        private long key(int row, int col) {
+            return ((long) row << 32) | (col & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.builder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导入时工作表的表头 表头 -> 列下标的字典，同一个工作表的所有ImportRow共用一个
+ * 表头的值和getExcelMapVal中Map的key相同；表头重复时按名称只能取到第一列，按下标可以取到每一列
+ * 不可变，线程安全
+ */
+public final class ImportHeader {
+
+    private final String[] names;
+    private final Map<String, Integer> index;
+    /**
+     * 每个名称第一次出现的列下标 按列的顺序
+     */
+    private final int[] distinct;
+
+    ImportHeader(String[] names) {
+        this.names = names;
+        Map<String, Integer> map = new HashMap<>(names.length * 2);
+        int[] first = new int[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (map.putIfAbsent(names[i], i) == null) {
+                first[count++] = i;
+            }
+        }
+        this.index = map;
+        this.distinct = Arrays.copyOf(first, count);
+    }
+
+    /**
+     * 列数
+     *
+     * @return
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param col 列下标(从0开始)
+     * @return
+     */
+    public String getName(int col) {
+        return names[col];
+    }
+
+    /**
+     * 所有列的表头 不可修改
+     *
+     * @return
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * 表头所在的列
+     *
+     * @param name 表头
+     * @return 列下标，没有这一列时为-1
+     */
+    public int indexOf(String name) {
+        Integer col = index.get(name);
+        return col == null ? -1 : col;
+    }
+
+    public boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /**
+     * 不重复的表头数量
+     *
+     * @return
+     */
+    int distinctSize() {
+        return distinct.length;
+    }
+
+    /**
+     * 第i个不重复的表头所在的列
+     *
+     * @param i
+     * @return
+     */
+    int distinctColumn(int i) {
+        return distinct[i];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
@@ -0,0 +1,162 @@
+package com.builder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 导入的一行 只保存每一列的值，表头使用同一个工作表共用的ImportHeader
+ * 代替getExcelMapVal中每个单元格一个HashMap的结构，需要原来的结构时用toCellMaps，按名称取值用get或asMap
+ * 不可变
+ */
+public final class ImportRow {
+
+    private final ImportHeader header;
+    /**
+     * 行下标(从0开始，第1行为表头)
+     */
+    private final int rowNum;
+    private final String[] values;
+
+    ImportRow(ImportHeader header, int rowNum, String[] values) {
+        this.header = header;
+        this.rowNum = rowNum;
+        this.values = values;
+    }
+
+    public ImportHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * 在工作表中的行下标
+     *
+     * @return 从0开始，第1行为表头
+     */
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * 列数 和表头的列数相同
+     *
+     * @return
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param col 列下标(从0开始)
+     * @return
+     */
+    public String get(int col) {
+        return values[col];
+    }
+
+    /**
+     * 按表头取值 表头重复时取第一列
+     *
+     * @param name 表头
+     * @return 没有这一列时为null
+     */
+    public String get(String name) {
+        int col = header.indexOf(name);
+        return col < 0 ? null : values[col];
+    }
+
+    /**
+     * 每一列的值 不可修改
+     *
+     * @return
+     */
+    public List<String> getValues() {
+        return Collections.unmodifiableList(Arrays.asList(values));
+    }
+
+    /**
+     * 表头 -> 值 的Map视图，不复制数据 不可修改，表头重复时只有第一列
+     *
+     * @return
+     */
+    public Map<String, String> asMap() {
+        return new RowMap();
+    }
+
+    /**
+     * 转成getExcelMapVal的结构 每一列一个 表头 -> 值 的Map
+     *
+     * @return
+     */
+    public List<Map<String, String>> toCellMaps() {
+        List<Map<String, String>> list = new ArrayList<>(values.length);
+        for (int j = 0; j < values.length; j++) {
+            Map<String, String> map = new HashMap<>();
+            map.put(header.getName(j), values[j]);
+            list.add(map);
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return rowNum + ":" + Arrays.toString(values);
+    }
+
+    private final class RowMap extends AbstractMap<String, String> {
+
+        @Override
+        public int size() {
+            return header.distinctSize();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && header.contains((String) key);
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? ImportRow.this.get((String) key) : null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return header.distinctSize();
+                }
+
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < header.distinctSize();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int col = header.distinctColumn(i++);
+                            return new SimpleImmutableEntry<>(header.getName(col), values[col]);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
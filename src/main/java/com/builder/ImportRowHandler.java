@@ -0,0 +1,37 @@
+package com.builder;
+
+import java.util.List;
+
+/**
+ * 分批导入的回调 读取工作表时每读够一批行调用一次onRowBatch，不需要等整个工作表读完
+ * 行和getExcelMapVal读取的行相同(跳过空行)，批次按行的顺序依次调用，不会同时调用
+ * 任何一个方法抛出异常时停止读取，异常原样抛给调用方
+ */
+public interface ImportRowHandler {
+
+    /**
+     * 读到表头 在第一批之前调用
+     *
+     * @param header 表头，所有行共用
+     * @throws Exception
+     */
+    default void onHeader(ImportHeader header) throws Exception {
+    }
+
+    /**
+     * 一批行 除了最后一批，每批的行数等于批次大小
+     *
+     * @param rows 这一批的行，每批是新的列表，可以保留
+     * @throws Exception
+     */
+    void onRowBatch(List<ImportRow> rows) throws Exception;
+
+    /**
+     * 工作表读完 所有批次都已经处理完
+     *
+     * @param rowCount 交给onRowBatch的总行数
+     * @throws Exception
+     */
+    default void onSheetEnd(int rowCount) throws Exception {
+    }
+}
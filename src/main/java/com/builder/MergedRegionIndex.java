@@ -0,0 +1,206 @@
+package com.builder;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 合并单元格的索引 导入时每个工作表建一次，代替每个单元格遍历全部合并范围
+ * 按行分桶：每一行记录覆盖这一行的合并范围，按首列排序，查找时二分，复杂度O(log 每行的合并数)
+ * 占用的内存和所有合并范围的行数之和成正比
+ * 合并范围互相重叠(excel中不允许，损坏的文件可能出现)时，所在的行按顺序查找，和原来一样取第一个包含单元格的范围
+ * 每个合并范围左上角单元格的值读取一次后缓存
+ * 一个工作表使用一个，不是线程安全的
+ */
+final class MergedRegionIndex {
+
+    static final MergedRegionIndex EMPTY = new MergedRegionIndex(new int[0][]);
+
+    /**
+     * 合并范围 每个元素为{firstRow,lastRow,firstCol,lastCol}
+     */
+    private final int[][] regions;
+    /**
+     * 第一个桶对应的行
+     */
+    private final int baseRow;
+    /**
+     * 每一行的合并范围在entries中的起始位置，长度为行数+1
+     */
+    private final int[] rowStart;
+    /**
+     * 合并范围的下标 每一行内按首列排序
+     */
+    private final int[] entries;
+    /**
+     * 是否有行中的合并范围互相重叠
+     */
+    private final boolean overlapping;
+    /**
+     * 左上角单元格的值 null为还没有读取
+     */
+    private final String[] values;
+
+    private MergedRegionIndex(int[][] regions) {
+        this.regions = regions;
+        this.values = new String[regions.length];
+        if (regions.length == 0) {
+            baseRow = 0;
+            rowStart = new int[1];
+            entries = new int[0];
+            overlapping = false;
+            return;
+        }
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = -1;
+        for (int[] region : regions) {
+            minRow = Math.min(minRow, region[0]);
+            maxRow = Math.max(maxRow, region[1]);
+        }
+        baseRow = minRow;
+        int rowCount = maxRow - minRow + 1;
+        rowStart = new int[rowCount + 1];
+        for (int[] region : regions) {
+            for (int r = region[0]; r <= region[1]; r++) {
+                rowStart[r - baseRow + 1]++;
+            }
+        }
+        for (int i = 0; i < rowCount; i++) {
+            rowStart[i + 1] += rowStart[i];
+        }
+        // 按首列的顺序放入各行，每一行自然按首列排序
+        long[] order = new long[regions.length];
+        for (int i = 0; i < regions.length; i++) {
+            order[i] = ((long) regions[i][2] << 32) | i;
+        }
+        Arrays.sort(order);
+        entries = new int[rowStart[rowCount]];
+        int[] next = Arrays.copyOf(rowStart, rowCount);
+        for (long key : order) {
+            int index = (int) key;
+            for (int r = regions[index][0]; r <= regions[index][1]; r++) {
+                entries[next[r - baseRow]++] = index;
+            }
+        }
+        boolean overlap = false;
+        for (int i = 0; i < rowCount && !overlap; i++) {
+            for (int k = rowStart[i]; k + 1 < rowStart[i + 1]; k++) {
+                if (regions[entries[k]][3] >= regions[entries[k + 1]][2]) {
+                    overlap = true;
+                    break;
+                }
+            }
+        }
+        overlapping = overlap;
+    }
+
+    /**
+     * @param regions 合并范围，每个元素为{firstRow,lastRow,firstCol,lastCol}
+     * @return
+     */
+    static MergedRegionIndex of(List<int[]> regions) {
+        if (regions == null || regions.isEmpty()) {
+            return EMPTY;
+        }
+        return new MergedRegionIndex(regions.toArray(new int[0][]));
+    }
+
+    /**
+     * 工作表的合并单元格
+     *
+     * @param sheet
+     * @return
+     */
+    static MergedRegionIndex of(Sheet sheet) {
+        List<CellRangeAddress> ranges = sheet.getMergedRegions();
+        List<int[]> regions = new ArrayList<>(ranges.size());
+        for (CellRangeAddress range : ranges) {
+            regions.add(new int[]{range.getFirstRow(), range.getLastRow(), range.getFirstColumn(), range.getLastColumn()});
+        }
+        return of(regions);
+    }
+
+    boolean isEmpty() {
+        return regions.length == 0;
+    }
+
+    /**
+     * 查找包含单元格的合并范围
+     *
+     * @param row    行下标
+     * @param column 列下标
+     * @return 合并范围的下标，不在合并范围内时为-1
+     */
+    int find(int row, int column) {
+        int r = row - baseRow;
+        if (r < 0 || r >= rowStart.length - 1) {
+            return -1;
+        }
+        int from = rowStart[r];
+        int to = rowStart[r + 1];
+        if (overlapping) {
+            int found = -1;
+            for (int k = from; k < to; k++) {
+                int[] region = regions[entries[k]];
+                if (column >= region[2] && column <= region[3] && (found < 0 || entries[k] < found)) {
+                    found = entries[k];
+                }
+            }
+            return found;
+        }
+        // 最后一个首列不大于column的合并范围
+        int low = from;
+        int high = to - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (regions[entries[mid]][2] <= column) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found >= 0 && regions[entries[found]][3] >= column) {
+            return entries[found];
+        }
+        return -1;
+    }
+
+    /**
+     * 单元格是否是合并范围的左上角
+     *
+     * @param region 合并范围的下标
+     * @param row    行下标
+     * @param column 列下标
+     * @return
+     */
+    boolean isFirstCell(int region, int row, int column) {
+        return regions[region][0] == row && regions[region][2] == column;
+    }
+
+    int getFirstRow(int region) {
+        return regions[region][0];
+    }
+
+    int getFirstColumn(int region) {
+        return regions[region][2];
+    }
+
+    /**
+     * 缓存的左上角单元格的值
+     *
+     * @param region 合并范围的下标
+     * @return 还没有读取时为null
+     */
+    String getValue(int region) {
+        return values[region];
+    }
+
+    void setValue(int region, String value) {
+        values[region] = value;
+    }
+}
@@ -0,0 +1,58 @@
+package com.builder;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * 分页数据迭代器
+ * 每次向pageSupplier取一页数据，取到空页(或null)时结束，
+ * 适用于数据库分页查询时边查询边导出，不需要先把所有数据加载到内存
+ *
+ * @param <T>
+ */
+public class PageIterator<T> implements Iterator<T> {
+
+    /**
+     * 获取下一页数据
+     */
+    private final Supplier<? extends List<T>> pageSupplier;
+    /**
+     * 当前页
+     */
+    private Iterator<T> current = Collections.emptyIterator();
+    /**
+     * 是否已经取完
+     */
+    private boolean finished;
+
+    public PageIterator(Supplier<? extends List<T>> pageSupplier) {
+        this.pageSupplier = pageSupplier;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            List<T> page = pageSupplier.get();
+            if (page == null || page.isEmpty()) {
+                finished = true;
+                return false;
+            }
+            current = page.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
@@ -0,0 +1,137 @@
+package com.builder;
+
+import com.entity.Column;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * POI对象模型的导出后端 支持HSSF(xls)、XSSF(xlsx)和SXSSF(流式xlsx)
+ * 表头由HeaderRenderer渲染，单元格由CellValueWriter写入，样式在创建后端前准备好，写单元格时不再创建样式
+ * 一次导出使用一个，不是线程安全的
+ */
+public class PoiExportBackend implements ExportBackend {
+
+    /**
+     * 写入的workbook，流式导出时为SXSSFWorkbook
+     */
+    private final Workbook workbook;
+    private final HeaderRenderer headerRenderer;
+    private final CellValueWriter cellValueWriter;
+    private final CellStyle styleBody;
+    private final int colWidth;
+    private final int rowHeight;
+    /**
+     * finish时写出的输出流，为null时只写入workbook，由调用方保存
+     */
+    private final OutputStream out;
+
+    /**
+     * @param workbook        写入的workbook，流式导出时为SXSSFWorkbook
+     * @param headerRenderer  表头渲染工具
+     * @param cellValueWriter 单元格写值工具
+     * @param styleBody       主体样式
+     * @param colWidth        单元格宽度
+     * @param rowHeight       单元格行高度
+     * @param out             finish时写出的输出流(不会关闭)，为null时不写出
+     */
+    public PoiExportBackend(Workbook workbook, HeaderRenderer headerRenderer, CellValueWriter cellValueWriter,
+                            CellStyle styleBody, int colWidth, int rowHeight, OutputStream out) {
+        this.workbook = workbook;
+        this.headerRenderer = headerRenderer;
+        this.cellValueWriter = cellValueWriter;
+        this.styleBody = styleBody;
+        this.colWidth = colWidth;
+        this.rowHeight = rowHeight;
+        this.out = out;
+    }
+
+    @Override
+    public int getMaxRows() {
+        return workbook instanceof HSSFWorkbook ? SheetSplitPolicy.XLS_MAX_ROWS : SheetSplitPolicy.XLSX_MAX_ROWS;
+    }
+
+    @Override
+    public SheetWriter newSheet(String sheetName, List<Column> headerCellList) {
+        Sheet sheet = workbook.createSheet(sheetName);
+        sheet.setDefaultColumnWidth(colWidth);
+        sheet.setDefaultRowHeightInPoints(rowHeight);
+        //流式导出时表头必须全部留在窗口内，否则合并单元格时表头行已经被写出
+        int totalRow = headerCellList.get(0).getTotalRow();
+        if (sheet instanceof SXSSFSheet && totalRow > ((SXSSFWorkbook) workbook).getRandomAccessWindowSize()) {
+            ((SXSSFSheet) sheet).setRandomAccessWindowSize(totalRow);
+        }
+        headerRenderer.render(sheet, headerCellList);
+        return new PoiSheetWriter(sheet, headerCellList.get(0).getTotalCol());
+    }
+
+    /**
+     * 写出到输出流，流式导出时删除临时文件
+     *
+     * @throws IOException
+     */
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (out != null) {
+                workbook.write(out);
+                out.flush();
+            }
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+        }
+    }
+
+    private class PoiSheetWriter implements SheetWriter {
+
+        private final Sheet sheet;
+        private final int totalCol;
+        private Row row;
+
+        private PoiSheetWriter(Sheet sheet, int totalCol) {
+            this.sheet = sheet;
+            this.totalCol = totalCol;
+        }
+
+        @Override
+        public void startRow(int rowIndex) {
+            row = sheet.createRow(rowIndex);
+        }
+
+        @Override
+        public void writeCell(int col, Object value) {
+            cellValueWriter.write(row.createCell(col), value, styleBody);
+        }
+
+        @Override
+        public void endRow() {
+            row = null;
+        }
+
+        /**
+         * SXSSF的列宽在workbook写出时才写入，写完数据后再设置也可以
+         *
+         * @param widths 表头和数据的列宽，没有设置列宽估算策略时为null
+         */
+        @Override
+        public void finish(ColumnWidthEstimator.Widths widths) {
+            if (widths == null) {
+                return;
+            }
+            for (int col = 0; col < totalCol; col++) {
+                int width = Math.max(widths.get(col) + 2, colWidth);
+                sheet.setColumnWidth(col, Math.min(width, ColumnWidthEstimator.MAX_CHARS) * 256);
+            }
+        }
+    }
+}
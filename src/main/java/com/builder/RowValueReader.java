@@ -0,0 +1,108 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 行内数据读取器 按列的下标(getColumnList的顺序)读取一行数据中每个单元格的值
+ * 支持的行数据格式:
+ * Map: 每一列的fieldName预先整理成key数组，每个单元格只get一次
+ * Object[]/List: 按位置读取，第j个元素对应第j个数据列(没有子节点的列，按getColumnList的顺序)，不需要hash；
+ * 有fieldName的父节点列不占位置
+ * 实体类: 通过FieldAccessor读取
+ * 有子节点的列不读取数据，返回null
+ * 一个sheet内使用，不是线程安全的
+ */
+public class RowValueReader {
+
+    /**
+     * 有fieldName的列 包括有子节点的列
+     */
+    private final List<Column> listCol;
+    /**
+     * 每一列对应的Map key，有子节点的列为null
+     */
+    private final String[] keys;
+    /**
+     * 每一列在Object[]/List行数据中的位置，有子节点的列为-1
+     */
+    private final int[] slots;
+    /**
+     * 实体类的字段读取器，读到实体类数据时才创建
+     */
+    private FieldAccessor accessor;
+
+    public RowValueReader(List<Column> listCol) {
+        this.listCol = listCol;
+        this.keys = new String[listCol.size()];
+        this.slots = new int[listCol.size()];
+        int slot = 0;
+        for (int i = 0; i < keys.length; i++) {
+            Column column = listCol.get(i);
+            keys[i] = column.isHasChildren() ? null : column.getFieldName();
+            slots[i] = keys[i] == null ? -1 : slot++;
+        }
+    }
+
+    /**
+     * 读取某一列的值
+     *
+     * @param row   行内数据
+     * @param index 列的下标
+     * @return
+     */
+    public Object get(Object row, int index) {
+        String key = keys[index];
+        if (key == null) {
+            return null;
+        }
+        if (row instanceof Map) {
+            return ((Map<?, ?>) row).get(key);
+        }
+        if (row instanceof Object[]) {
+            Object[] values = (Object[]) row;
+            int slot = slots[index];
+            return slot < values.length ? values[slot] : null;
+        }
+        if (row instanceof List) {
+            List<?> values = (List<?>) row;
+            int slot = slots[index];
+            return slot < values.size() ? values.get(slot) : null;
+        }
+        if (accessor == null || accessor.getType() != row.getClass()) {
+            accessor = FieldAccessor.of(row.getClass(), listCol);
+        }
+        return accessor.get(row, index);
+    }
+
+    /**
+     * 按excel列号从小到大排列的列下标，同一个列号只保留最后一个(和重复createCell的结果一致)
+     * 直接生成xml时单元格必须按列号顺序写入
+     *
+     * @return
+     */
+    public int[] getWriteOrder() {
+        TreeMap<Integer, Integer> colIndex = new TreeMap<>();
+        for (int i = 0; i < listCol.size(); i++) {
+            colIndex.put(listCol.get(i).getCol(), i);
+        }
+        int[] order = new int[colIndex.size()];
+        int i = 0;
+        for (Integer index : colIndex.values()) {
+            order[i++] = index;
+        }
+        return order;
+    }
+
+    /**
+     * 有fieldName的列的个数(包括有子节点的列)
+     *
+     * @return
+     */
+    public int size() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,121 @@
+package com.builder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 流式读取时把单元格组装成行 和getExcelValues、getExcelMapVal的规则一致
+ * 第1行为表头，列数按表头最后一个单元格计算；表头以下每一行补齐到表头的列数，超出的列忽略
+ * 存在的单元格在合并范围内时取左上角单元格的值，合并范围用MergedRegionIndex查找，左上角的值在读到时缓存
+ * 行和单元格必须按顺序交给这里：startRow、cell...、endRow
+ */
+final class SheetRowAssembler {
+
+    /**
+     * 表头以下的一行
+     */
+    interface RowSink {
+        /**
+         * @param rowIndex 行下标(从0开始)
+         * @param values   每一列的值，长度为表头的列数，交给这里以后不再修改
+         * @param blank    是否所有单元格都不存在或为空白单元格
+         */
+        void accept(int rowIndex, String[] values, boolean blank);
+    }
+
+    private final RowSink rows;
+    private final Consumer<String[]> header;
+    /**
+     * 合并单元格的索引 左上角单元格的值在读到时缓存
+     */
+    private MergedRegionIndex merges = MergedRegionIndex.EMPTY;
+    private int rowIndex = -1;
+    /**
+     * 表头的列数 读到第1行后确定
+     */
+    private int colCount = -1;
+    private String[] values;
+    private boolean blank;
+
+    /**
+     * @param rows   表头以下每一行的值和是否整行为空
+     * @param header 表头每一列的值，可以为null
+     */
+    SheetRowAssembler(RowSink rows, Consumer<String[]> header) {
+        this.rows = rows;
+        this.header = header;
+    }
+
+    /**
+     * 设置工作表的合并单元格 必须在第一行之前设置
+     *
+     * @param merges 每个元素为{firstRow,lastRow,firstCol,lastCol}
+     */
+    void setMerges(List<int[]> merges) {
+        this.merges = MergedRegionIndex.of(merges);
+    }
+
+    void startRow(int rowIndex) {
+        this.rowIndex = rowIndex;
+        if (rowIndex == 0) {
+            values = new String[0];
+        } else if (rowIndex > 0) {
+            if (colCount < 0) {
+                throw new IllegalStateException("第1行表头为空");
+            }
+            values = new String[colCount];
+            Arrays.fill(values, "");
+        }
+        blank = true;
+    }
+
+    /**
+     * 当前行的一个单元格
+     *
+     * @param col       列号(从0开始)
+     * @param value     单元格的值
+     * @param blankCell 是否是空白单元格(没有值也没有公式)
+     */
+    void cell(int col, String value, boolean blankCell) {
+        int region = merges.isEmpty() ? -1 : merges.find(rowIndex, col);
+        if (region >= 0 && merges.isFirstCell(region, rowIndex, col)) {
+            merges.setValue(region, value);
+        }
+        if (rowIndex == 0) {
+            if (col >= values.length) {
+                String[] grown = Arrays.copyOf(values, col + 1);
+                for (int i = values.length; i < col; i++) {
+                    grown[i] = "";
+                }
+                values = grown;
+            }
+            values[col] = value;
+            return;
+        }
+        if (rowIndex < 0 || col >= colCount) {
+            return;
+        }
+        if (!blankCell) {
+            blank = false;
+        }
+        if (region >= 0) {
+            String first = merges.getValue(region);
+            values[col] = first == null ? "" : first;
+        } else {
+            values[col] = value;
+        }
+    }
+
+    void endRow() {
+        if (rowIndex == 0) {
+            colCount = values.length;
+            if (header != null) {
+                header.accept(values);
+            }
+        } else if (rowIndex > 0) {
+            rows.accept(rowIndex, values, blank);
+        }
+        values = null;
+    }
+}
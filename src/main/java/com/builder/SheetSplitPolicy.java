@@ -0,0 +1,240 @@
+package com.builder;
+
+/**
+ * sheet拆分策略 决定一个sheet写入多少行数据后换到下一个sheet
+ * 三种限制可以组合使用，任意一个达到上限就新建sheet:
+ * maxRows:  每个sheet最多行数(包含表头)，按文件格式 xls为65536行，xlsx为1048576行
+ * maxCells: 每个sheet最多数据单元格数(数据行数 x 叶子列数)
+ * maxBytes: 每个sheet最多估算字节数(按单元格内容估算)，让下游读取的sheet大小可以预期
+ * 不可变，可以在多个导出之间共用
+ */
+public class SheetSplitPolicy {
+
+    /**
+     * xls每个sheet的最大行数
+     */
+    public static final int XLS_MAX_ROWS = 65536;
+    /**
+     * xlsx每个sheet的最大行数
+     */
+    public static final int XLSX_MAX_ROWS = 1048576;
+    /**
+     * 每个单元格xml标签等固定部分的估算字节数
+     */
+    private static final int CELL_OVERHEAD_BYTES = 32;
+
+    private static final SheetSplitPolicy XLS = new SheetSplitPolicy(XLS_MAX_ROWS, 0, 0);
+    private static final SheetSplitPolicy XLSX = new SheetSplitPolicy(XLSX_MAX_ROWS, 0, 0);
+
+    /**
+     * 每个sheet最多行数(包含表头)
+     */
+    private final int maxRows;
+    /**
+     * 每个sheet最多数据单元格数，小于等于0不限制
+     */
+    private final long maxCells;
+    /**
+     * 每个sheet最多估算字节数，小于等于0不限制
+     */
+    private final long maxBytes;
+
+    private SheetSplitPolicy(int maxRows, long maxCells, long maxBytes) {
+        if (maxRows <= 0) {
+            throw new IllegalArgumentException("每个sheet的最大行数必须大于0");
+        }
+        this.maxRows = maxRows;
+        this.maxCells = maxCells;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * xls格式 每个sheet最多65536行
+     *
+     * @return
+     */
+    public static SheetSplitPolicy xls() {
+        return XLS;
+    }
+
+    /**
+     * xlsx格式 每个sheet最多1048576行
+     *
+     * @return
+     */
+    public static SheetSplitPolicy xlsx() {
+        return XLSX;
+    }
+
+    /**
+     * 每个sheet最多maxRows行(包含表头)
+     *
+     * @param maxRows
+     * @return
+     */
+    public static SheetSplitPolicy rows(int maxRows) {
+        return new SheetSplitPolicy(maxRows, 0, 0);
+    }
+
+    /**
+     * 在当前策略上再限制每个sheet的数据单元格数
+     *
+     * @param maxCells 小于等于0不限制
+     * @return
+     */
+    public SheetSplitPolicy withMaxCells(long maxCells) {
+        return new SheetSplitPolicy(this.maxRows, maxCells, this.maxBytes);
+    }
+
+    /**
+     * 在当前策略上再限制每个sheet的估算字节数
+     *
+     * @param maxBytes 小于等于0不限制
+     * @return
+     */
+    public SheetSplitPolicy withMaxBytes(long maxBytes) {
+        return new SheetSplitPolicy(this.maxRows, this.maxCells, maxBytes);
+    }
+
+    /**
+     * 不能超过文件格式的最大行数
+     *
+     * @param formatMaxRows 文件格式的最大行数
+     * @return
+     */
+    public SheetSplitPolicy limitTo(int formatMaxRows) {
+        if (this.maxRows <= formatMaxRows) {
+            return this;
+        }
+        return new SheetSplitPolicy(formatMaxRows, this.maxCells, this.maxBytes);
+    }
+
+    /**
+     * 开始写一个新的sheet
+     *
+     * @param headerRows  表头行数
+     * @param columnCount 叶子列数
+     * @return 这个sheet的计数器
+     */
+    public Counter start(int headerRows, int columnCount) {
+        if (headerRows >= this.maxRows) {
+            throw new IllegalStateException("表头行数超过了每个sheet的最大行数:" + this.maxRows);
+        }
+        long limit = this.maxRows - headerRows;
+        if (this.maxCells > 0 && columnCount > 0) {
+            limit = Math.min(limit, Math.max(1, this.maxCells / columnCount));
+        }
+        return new Counter((int) limit, this.maxBytes);
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public long getMaxCells() {
+        return maxCells;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 估算一个单元格写入后的字节数，中文等非ASCII字符按UTF-8的3个字节计算
+     *
+     * @param value 单元格的值
+     * @return
+     */
+    public static long estimateBytes(Object value) {
+        if (value == null) {
+            return CELL_OVERHEAD_BYTES;
+        }
+        String text = value.toString();
+        long bytes = CELL_OVERHEAD_BYTES;
+        for (int i = 0; i < text.length(); i++) {
+            bytes += text.charAt(i) < 0x80 ? 1 : 3;
+        }
+        return bytes;
+    }
+
+    /**
+     * 一个sheet的计数器 写每一行前调用hasRoom()，写完一行后调用endRow()
+     * 限制了字节数时每个单元格调用addCell()累计估算字节数
+     * 每个sheet至少写入一行数据，不是线程安全的
+     */
+    public static class Counter {
+
+        /**
+         * 最多数据行数
+         */
+        private final int rowLimit;
+        /**
+         * 最多估算字节数，小于等于0不限制
+         */
+        private final long byteLimit;
+        private int rows;
+        private long bytes;
+
+        private Counter(int rowLimit, long byteLimit) {
+            this.rowLimit = rowLimit;
+            this.byteLimit = byteLimit;
+        }
+
+        /**
+         * 这个sheet是否还可以再写一行
+         *
+         * @return
+         */
+        public boolean hasRoom() {
+            if (rows >= rowLimit) {
+                return false;
+            }
+            return rows == 0 || byteLimit <= 0 || bytes < byteLimit;
+        }
+
+        /**
+         * 是否需要累计单元格的字节数
+         *
+         * @return
+         */
+        public boolean isCountingBytes() {
+            return byteLimit > 0;
+        }
+
+        /**
+         * 累计一个单元格的估算字节数
+         *
+         * @param value 单元格的值
+         */
+        public void addCell(Object value) {
+            if (byteLimit > 0) {
+                bytes += estimateBytes(value);
+            }
+        }
+
+        /**
+         * 写完一行
+         */
+        public void endRow() {
+            rows++;
+        }
+
+        /**
+         * 已写入的数据行数
+         *
+         * @return
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * 最多数据行数
+         *
+         * @return
+         */
+        public int getRowLimit() {
+            return rowLimit;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.builder;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 单元格样式登记 按(填充色、对齐方式、边框、数据格式、字体)去重，同样的组合在一个workbook中只创建一个样式
+ * 登记后返回固定的下标，写单元格时按下标取样式；登记后的样式不再修改，可以在所有单元格之间共用
+ * 数据格式在登记时查找一次，写单元格时不再查找，样式数量也不会因为重复创建超过excel的上限
+ * 一个workbook使用一个，不是线程安全的
+ */
+public class StyleRegistry {
+
+    private final Workbook workbook;
+    /**
+     * 样式描述 -> 下标
+     */
+    private final Map<Spec, Integer> indexes = new HashMap<>();
+    /**
+     * 按下标存放的样式
+     */
+    private final List<CellStyle> styles = new ArrayList<>();
+    /**
+     * 数据格式缓存 key:格式字符串
+     */
+    private final Map<String, Short> formats = new HashMap<>();
+
+    /**
+     * @param workbook 创建样式的workbook
+     */
+    public StyleRegistry(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    /**
+     * 登记一个样式，同样的描述返回同一个下标
+     *
+     * @param spec 样式描述
+     * @return 样式下标
+     */
+    public int register(Spec spec) {
+        Integer index = indexes.get(spec);
+        if (index == null) {
+            index = styles.size();
+            styles.add(create(spec));
+            indexes.put(spec, index);
+        }
+        return index;
+    }
+
+    /**
+     * 按下标获取样式
+     *
+     * @param index register返回的下标
+     * @return
+     */
+    public CellStyle getStyle(int index) {
+        return styles.get(index);
+    }
+
+    /**
+     * 获取样式，没有登记时先登记
+     *
+     * @param spec 样式描述
+     * @return
+     */
+    public CellStyle getStyle(Spec spec) {
+        return styles.get(register(spec));
+    }
+
+    /**
+     * 已登记的样式个数
+     *
+     * @return
+     */
+    public int size() {
+        return styles.size();
+    }
+
+    private CellStyle create(Spec spec) {
+        CellStyle style = workbook.createCellStyle();
+        if (spec.alignment != null) {
+            style.setAlignment(spec.alignment);
+        }
+        if (spec.verticalAlignment != null) {
+            style.setVerticalAlignment(spec.verticalAlignment);
+        }
+        style.setBorderBottom(spec.borderBottom);
+        style.setBorderLeft(spec.borderLeft);
+        style.setBorderRight(spec.borderRight);
+        style.setBorderTop(spec.borderTop);
+        if (spec.fillColor >= 0) {
+            style.setFillForegroundColor(spec.fillColor);
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        }
+        if (spec.dataFormat != null) {
+            style.setDataFormat(getFormat(spec.dataFormat));
+        }
+        if (spec.fontIndex > 0) {
+            style.setFont(workbook.getFontAt(spec.fontIndex));
+        }
+        return style;
+    }
+
+    private short getFormat(String pattern) {
+        Short format = formats.get(pattern);
+        if (format == null) {
+            format = workbook.createDataFormat().getFormat(pattern);
+            formats.put(pattern, format);
+        }
+        return format;
+    }
+
+    /**
+     * 样式描述 不可变，作为登记的key
+     * 从Spec.of()开始，用with*方法得到新的描述
+     */
+    public static final class Spec {
+
+        private static final Spec EMPTY = new Spec((short) -1, null, null, BorderStyle.NONE, BorderStyle.NONE,
+                BorderStyle.NONE, BorderStyle.NONE, null, 0);
+
+        /**
+         * 纯色填充的颜色，小于0不填充
+         */
+        private final short fillColor;
+        private final HorizontalAlignment alignment;
+        private final VerticalAlignment verticalAlignment;
+        private final BorderStyle borderBottom;
+        private final BorderStyle borderLeft;
+        private final BorderStyle borderRight;
+        private final BorderStyle borderTop;
+        /**
+         * 数据格式，例如@、yyyy-MM-dd，为null时使用常规格式
+         */
+        private final String dataFormat;
+        /**
+         * 字体在workbook中的下标，0为默认字体
+         */
+        private final int fontIndex;
+
+        private Spec(short fillColor, HorizontalAlignment alignment, VerticalAlignment verticalAlignment,
+                     BorderStyle borderBottom, BorderStyle borderLeft, BorderStyle borderRight, BorderStyle borderTop,
+                     String dataFormat, int fontIndex) {
+            this.fillColor = fillColor;
+            this.alignment = alignment;
+            this.verticalAlignment = verticalAlignment;
+            this.borderBottom = borderBottom;
+            this.borderLeft = borderLeft;
+            this.borderRight = borderRight;
+            this.borderTop = borderTop;
+            this.dataFormat = dataFormat;
+            this.fontIndex = fontIndex;
+        }
+
+        /**
+         * 默认样式 不填充、无边框、常规格式、默认字体
+         *
+         * @return
+         */
+        public static Spec of() {
+            return EMPTY;
+        }
+
+        public Spec withFillColor(short fillColor) {
+            return new Spec(fillColor, alignment, verticalAlignment, borderBottom, borderLeft, borderRight, borderTop,
+                    dataFormat, fontIndex);
+        }
+
+        public Spec withAlignment(HorizontalAlignment alignment, VerticalAlignment verticalAlignment) {
+            return new Spec(fillColor, alignment, verticalAlignment, borderBottom, borderLeft, borderRight, borderTop,
+                    dataFormat, fontIndex);
+        }
+
+        /**
+         * 设置边框
+         *
+         * @param bottom 下
+         * @param left   左
+         * @param right  右
+         * @param top    上
+         * @return
+         */
+        public Spec withBorders(BorderStyle bottom, BorderStyle left, BorderStyle right, BorderStyle top) {
+            return new Spec(fillColor, alignment, verticalAlignment, bottom, left, right, top, dataFormat, fontIndex);
+        }
+
+        public Spec withDataFormat(String dataFormat) {
+            return new Spec(fillColor, alignment, verticalAlignment, borderBottom, borderLeft, borderRight, borderTop,
+                    dataFormat, fontIndex);
+        }
+
+        public Spec withFontIndex(int fontIndex) {
+            return new Spec(fillColor, alignment, verticalAlignment, borderBottom, borderLeft, borderRight, borderTop,
+                    dataFormat, fontIndex);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Spec)) {
+                return false;
+            }
+            Spec spec = (Spec) o;
+            return fillColor == spec.fillColor && fontIndex == spec.fontIndex && alignment == spec.alignment
+                    && verticalAlignment == spec.verticalAlignment && borderBottom == spec.borderBottom
+                    && borderLeft == spec.borderLeft && borderRight == spec.borderRight && borderTop == spec.borderTop
+                    && Objects.equals(dataFormat, spec.dataFormat);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fillColor, alignment, verticalAlignment, borderBottom, borderLeft, borderRight,
+                    borderTop, dataFormat, fontIndex);
+        }
+    }
+}
@@ -1,17 +1,23 @@
-package com.joolun.common.freedomexcel.builder;
+package com.builder;
 
-import com.joolun.common.freedomexcel.entity.Column;
+import com.entity.Column;
 import lombok.Data;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.RegionUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.*;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * excel处理工具
@@ -26,13 +32,20 @@ public class XSSExcelColorTool<T> {
     private int rowHeight = 20;
     private XSSFCellStyle styleHead;
     private Map<String, XSSFCellStyle> styleBodyMap = new HashMap<>(); // 缓存不同颜色的样式
-    private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-
+    private StyleRegistry styleRegistry; // 样式登记，同样的样式只创建一个，登记后不再修改
+    private StyleRegistry.Spec bodySpec; // 默认主体样式的描述，颜色规则的样式在此基础上换填充色
+    private Map<IndexedColors, XSSFCellStyle> ruleStyles = new EnumMap<>(IndexedColors.class); // 自定义颜色规则使用的样式
+    private List<ColorRule> colorRules = new ArrayList<>(); // 颜色规则，能写成条件格式的写成sheet级别的条件格式
+    private DateFormats dateFormats = DateFormats.defaults(); // 日期格式化，按格式缓存的DateTimeFormatter，线程安全
+    private boolean typedCell; // 是否按数据类型写入单元格(数值、布尔、日期写成excel原生类型)
+    private CellValueWriter cellValueWriter;
+    private HeaderRenderer headerRenderer; // 表头渲染工具，拆分出的多个sheet共用
+    private SheetSplitPolicy splitPolicy = SheetSplitPolicy.xlsx(); // sheet拆分策略，默认每个sheet最多1048576行(包含表头)
+
+    private static final DateFormats IMPORT_DATE_FORMATS = DateFormats.of(DateFormats.IMPORT_PATTERN); // 导入时日期单元格的格式
     private static final int DEFAULT_WIDTH = 12;
-    private static final int WIDTH_FACTOR = 256;
-    private static final int MAX_WIDTH = 255 * WIDTH_FACTOR;
-    private Map<Integer, Integer> headerWidths = new HashMap<>();
-    private Map<Integer, Integer> dataWidths = new HashMap<>();
+    private ColumnWidthEstimator widthEstimator = ColumnWidthEstimator.sampled(ColumnWidthEstimator.DEFAULT_SAMPLE_ROWS); // 列宽估算策略，默认前10000行全部计算，之后抽样
+    private ColumnWidthEstimator.Widths columnWidths; // 表头和数据的列宽，拆分出的多个sheet共用
 
     // 构造函数
     public XSSExcelColorTool() {
@@ -60,7 +73,7 @@ public class XSSExcelColorTool<T> {
         this.rowHeight = rowHeight;
         this.title = title;
         this.workbook = new XSSFWorkbook();
-        this.sdf = new SimpleDateFormat(dateFormat);
+        this.dateFormats = DateFormats.of(dateFormat);
         initStyles();
     }
 
@@ -78,27 +91,26 @@ public class XSSExcelColorTool<T> {
     }
 
     private void initStyles(int styleFlag) {
+        this.styleRegistry = new StyleRegistry(workbook);
+
         // 表头样式
         this.styleHead = workbook.createCellStyle();
         this.styleHead.setAlignment(HorizontalAlignment.CENTER);
         this.styleHead.setVerticalAlignment(VerticalAlignment.CENTER);
 
-        // 初始化默认主体样式
-        XSSFCellStyle defaultStyleBody = workbook.createCellStyle();
-        defaultStyleBody.setAlignment(HorizontalAlignment.CENTER);
-        defaultStyleBody.setVerticalAlignment(VerticalAlignment.CENTER);
-        defaultStyleBody.setBorderRight(BorderStyle.THIN);
-        defaultStyleBody.setBorderBottom(BorderStyle.THIN);
-        defaultStyleBody.setFillForegroundColor(IndexedColors.WHITE1.getIndex());
-        defaultStyleBody.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        styleBodyMap.put("default", defaultStyleBody);
+        // 初始化默认主体样式 文本格式在登记时设置，写单元格时不再修改样式
+        StyleRegistry.Spec defaultSpec = StyleRegistry.Spec.of()
+                .withAlignment(HorizontalAlignment.CENTER, VerticalAlignment.CENTER)
+                .withBorders(BorderStyle.THIN, BorderStyle.NONE, BorderStyle.THIN, BorderStyle.NONE)
+                .withFillColor(IndexedColors.WHITE1.getIndex())
+                .withDataFormat("@");
+        styleBodyMap.put("default", (XSSFCellStyle) styleRegistry.getStyle(defaultSpec));
+        this.bodySpec = defaultSpec;
 
         switch (styleFlag) {
             case 1:
-                XSSFCellStyle leftStyle = workbook.createCellStyle();
-                leftStyle.cloneStyleFrom(defaultStyleBody);
-                leftStyle.setAlignment(HorizontalAlignment.LEFT);
-                styleBodyMap.put("left", leftStyle);
+                styleBodyMap.put("left", (XSSFCellStyle) styleRegistry.getStyle(
+                        defaultSpec.withAlignment(HorizontalAlignment.LEFT, VerticalAlignment.CENTER)));
                 break;
             case 2:
                 this.styleHead.setFillForegroundColor(IndexedColors.DARK_RED.getIndex());
@@ -111,18 +123,29 @@ public class XSSExcelColorTool<T> {
         }
 
         // 初始化颜色样式
-        createColorStyle("red", IndexedColors.RED1);
-        createColorStyle("green", IndexedColors.GREEN);
-        createColorStyle("blue", IndexedColors.BLUE);
+        createColorStyle("red", IndexedColors.RED1, defaultSpec);
+        createColorStyle("green", IndexedColors.GREEN, defaultSpec);
+        createColorStyle("blue", IndexedColors.BLUE, defaultSpec);
+    }
+
+    // 创建带颜色的样式 同样的颜色只登记一个样式
+    private void createColorStyle(String colorName, IndexedColors color, StyleRegistry.Spec defaultSpec) {
+        styleBodyMap.put(colorName, (XSSFCellStyle) styleRegistry.getStyle(defaultSpec.withFillColor(color.getIndex())));
     }
 
-    // 创建带颜色的样式
-    private void createColorStyle(String colorName, IndexedColors color) {
-        XSSFCellStyle colorStyle = workbook.createCellStyle();
-        colorStyle.cloneStyleFrom(styleBodyMap.get("default"));
-        colorStyle.setFillForegroundColor(color.getIndex());
-        colorStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        styleBodyMap.put(colorName, colorStyle);
+    // 添加颜色规则 大于、小于、等于、区间、前N名写成条件格式，自定义条件逐个单元格判断
+    public void addColorRule(ColorRule rule) {
+        colorRules.add(rule);
+    }
+
+    // 自定义颜色规则匹配时使用的样式 和默认主体样式只有填充色不同
+    private XSSFCellStyle getRuleStyle(IndexedColors color) {
+        XSSFCellStyle style = ruleStyles.get(color);
+        if (style == null) {
+            style = (XSSFCellStyle) styleRegistry.getStyle(bodySpec.withFillColor(color.getIndex()));
+            ruleStyles.put(color, style);
+        }
+        return style;
     }
 
     // 获取合适的样式
@@ -151,108 +174,154 @@ public class XSSExcelColorTool<T> {
         return save(workbook);
     }
 
-    // 写入Sheet
-    private void writeSheet(XSSFSheet sheet, List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
-        sheet.setDefaultRowHeightInPoints(rowHeight);
-        sheet = createHead(sheet, headerCellList.get(0).getTotalRow(), headerCellList.get(0).getTotalCol());
-        createHead(headerCellList, sheet, 0);
+    // 直接写入调用方的输出流(例如servlet的response)，输出流由调用方关闭
+    public void exportExcel(List<Column> headerCellList, List<T> rowList, OutputStream out, boolean flag) throws Exception {
+        splitDataToSheets(rowList, headerCellList, flag, false);
+        save(workbook, out);
+    }
+
+    // 直接写入调用方的通道，通道由调用方关闭
+    public void exportExcel(List<Column> headerCellList, List<T> rowList, WritableByteChannel channel, boolean flag) throws Exception {
+        exportExcel(headerCellList, rowList, Channels.newOutputStream(channel), flag);
+    }
 
-        if (flag) {
-            writeSheetContent(headerCellList, data, sheet, headerCellList.get(0).getTotalRow(), rowFlag);
+    // 导出方法 行内数据边读取边写入，适用于数据库游标等不能一次加载到内存的数据
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, String filePath, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        save(workbook, filePath);
+    }
+
+    // 行内数据来自Stream，导出结束后关闭Stream
+    public void exportExcel(List<Column> headerCellList, Stream<T> rowStream, String filePath, boolean flag) throws Exception {
+        try {
+            exportExcel(headerCellList, rowStream.iterator(), filePath, flag);
+        } finally {
+            rowStream.close();
         }
+    }
+
+    // 行内数据分页获取，pageSupplier返回空页(或null)时结束
+    public void exportExcel(List<Column> headerCellList, Supplier<List<T>> pageSupplier, String filePath, boolean flag) throws Exception {
+        exportExcel(headerCellList, new PageIterator<>(pageSupplier), filePath, flag);
+    }
 
-        // 设置列宽
-        for (int col = 0; col < headerCellList.get(0).getTotalCol(); col++) {
-            int headerWidth = headerWidths.getOrDefault(col, DEFAULT_WIDTH);
-            int dataWidth = dataWidths.getOrDefault(col, DEFAULT_WIDTH);
-            int finalWidth = Math.max(headerWidth, dataWidth);
-            sheet.setColumnWidth(col, Math.min(finalWidth * WIDTH_FACTOR, MAX_WIDTH));
+    // 行内数据边读取边写入，直接写入调用方的输出流
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        save(workbook, out);
+    }
+
+    public InputStream exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        return save(workbook);
+    }
+
+    public XSSFWorkbook exportWorkbook(List<Column> listTpamscolumn, Iterator<T> rowIterator, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, listTpamscolumn, flag);
+        return workbook;
+    }
+
+    // 表头和数据的列宽 第一次使用时按列宽估算策略创建
+    public ColumnWidthEstimator.Widths getColumnWidths() {
+        if (columnWidths == null) {
+            ColumnWidthEstimator estimator = widthEstimator == null ? ColumnWidthEstimator.all() : widthEstimator;
+            columnWidths = estimator.start();
         }
+        return columnWidths;
     }
 
-    // 分割Sheet
+    // 分割Sheet 每个sheet的大小由拆分策略决定
     private void splitDataToSheets(List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
-        int dataCount = data.size();
-        int maxRows = 65535;
-        int pieces = dataCount / maxRows + (dataCount % maxRows > 0 ? 1 : 0);
-
-        for (int i = 0; i < pieces; i++) {
-            XSSFSheet sheet = workbook.createSheet(title + (i + 1));
-            int start = i * maxRows;
-            int end = Math.min((i + 1) * maxRows, dataCount);
-            List<T> subList = data.subList(start, end);
-            writeSheet(sheet, subList, headerCellList, flag, rowFlag);
-        }
+        splitDataToSheets(data.iterator(), headerCellList, flag);
     }
 
-    // 写入内容
-    private void writeSheetContent(List<Column> headerCellList, List<T> datas, XSSFSheet sheet, int rowIndex, boolean rowFlag) throws Exception {
-        List<Column> listCol = new ArrayList<>();
-        getColumnList(headerCellList, listCol);
-        for (int i = 0, index = rowIndex; i < datas.size(); i++, index++) {
-            XSSFRow row = sheet.createRow(index);
-            for (int j = 0; j < listCol.size(); j++) {
-                createCol(row, listCol.get(j), datas.get(i));
-            }
-        }
+    // 分割Sheet 行内数据边读取边写入，当前sheet达到拆分策略的上限且还有数据时新建sheet
+    // 读取行内数据、日期格式化和拆分走统一的导出流程，颜色和颜色规则在ColorExportBackend中处理
+    private void splitDataToSheets(Iterator<T> data, List<Column> headerCellList, boolean flag) throws Exception {
+        calculateHeaderWidths(headerCellList);
+        ExportPipeline<T> pipeline = new ExportPipeline<>(headerCellList, title, splitPolicy, dateFormats, typedCell, null);
+        pipeline.write(newBackend(workbook, pipeline, null), data, flag);
     }
 
-    // 创建单元格
+    // 流式导出 使用包装workbook的SXSSFWorkbook，内存中只保留windowSize行，颜色和颜色规则都保留
+    // 直接写入调用方的输出流，输出流由调用方关闭；导出后不能再使用exportWorkbook
+    public void exportStreamingExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, int windowSize) throws Exception {
+        calculateHeaderWidths(headerCellList);
+        SXSSFWorkbook streamWorkbook = new SXSSFWorkbook(workbook, windowSize);
+        streamWorkbook.setCompressTempFiles(true);
+        ExportPipeline<T> pipeline = new ExportPipeline<>(headerCellList, title, splitPolicy, dateFormats, typedCell, null);
+        pipeline.export(newBackend(streamWorkbook, pipeline, out), rowIterator);
+    }
+
+    // 颜色导出后端 样式、表头渲染和列宽都使用这个工具的，target为包装workbook的SXSSFWorkbook时样式共用
+    private ColorExportBackend newBackend(Workbook target, ExportPipeline<T> pipeline, OutputStream out) {
+        return new ColorExportBackend(target, getHeaderRenderer(), getCellValueWriter(), pipeline.getLeafColumns(),
+                this::getStyleBody, this::getRuleStyle, colorRules, getColumnWidths(), DEFAULT_WIDTH, rowHeight, out);
+    }
+
+    // 创建单元格 使用行内数据的<fieldName>_color，颜色规则只在导出时判断
     public void createCol(XSSFRow row, Column tpamscolumn, T v) throws Exception {
-        XSSFCell cell = row.createCell(tpamscolumn.getCol());
-        Object value = null;
+        Object value = new RowValueReader(Collections.singletonList(tpamscolumn)).get(v, 0);
         String color = null;
-
         if (v instanceof Map) {
-            Map<?, ?> m = (Map<?, ?>) v;
-            value = m.get(tpamscolumn.getFieldName());
-            if (m.get(tpamscolumn.getFieldName() + "_color") != null) {
-                color = m.get(tpamscolumn.getFieldName() + "_color").toString();
-            }
-        } else {
-            Class<?> cls = v.getClass();
-            for (Field f : cls.getDeclaredFields()) {
-                f.setAccessible(true);
-                if (tpamscolumn.getFieldName().equals(f.getName()) && !tpamscolumn.isHasChildren()) {
-                    value = f.get(v);
-                    if (value instanceof Date) {
-                        value = parseDate((Date) value);
-                    }
-                }
+            Object c = ((Map<?, ?>) v).get(tpamscolumn.getFieldName() + "_color");
+            if (c != null) {
+                color = c.toString();
             }
         }
+        if (!typedCell && DateFormats.isDate(value)) {
+            value = parseDate(value);
+        }
+        getCellValueWriter().write(row.createCell(tpamscolumn.getCol()), value, getStyleBody(color));
+        if (value != null) {
+            getColumnWidths().merge(tpamscolumn.getCol(), calculateWidth(value.toString()));
+        }
+    }
 
-        XSSFCellStyle style = getStyleBody(color);
-        style.setDataFormat(workbook.createDataFormat().getFormat("@"));
-        cell.setCellStyle(style);
+    // 表头渲染工具 只有合并的单元格加边框
+    public HeaderRenderer getHeaderRenderer() {
+        if (headerRenderer == null) {
+            headerRenderer = new HeaderRenderer(workbook, styleHead, false);
+        }
+        return headerRenderer;
+    }
 
-        if (value != null) {
-            String stringValue = value.toString();
-            cell.setCellValue(new XSSFRichTextString(stringValue));
-            int dataWidth = calculateWidth(stringValue);
-            dataWidths.merge(tpamscolumn.getCol(), dataWidth, Math::max);
+    // 单元格写值工具
+    public CellValueWriter getCellValueWriter() {
+        if (cellValueWriter == null) {
+            cellValueWriter = new CellValueWriter(workbook, dateFormats.getPattern(), typedCell);
         }
+        return cellValueWriter;
     }
 
-    // 计算宽度
+    // 计算宽度 中日韩文字、全角字符等宽字符算2个字符
     private int calculateWidth(String content) {
         if (content == null || content.isEmpty()) return DEFAULT_WIDTH;
-        int width = 0;
-        for (char c : content.toCharArray()) {
-            width += (c >= 0x4E00 && c <= 0x9FFF) ? 2 : 1;
-        }
+        int width = ColumnWidthEstimator.textWidth(content);
         return Math.max(width + 2, DEFAULT_WIDTH);
     }
 
-    // 时间格式化
-    private String parseDate(Date date) {
+    // 时间格式化 支持Date、Calendar和java.time的日期类型
+    private String parseDate(Object date) {
         try {
-            return sdf.format(date);
+            return dateFormats.format(date);
         } catch (Exception e) {
             return "";
         }
     }
 
+    // 兼容之前的SimpleDateFormat设置，返回新的对象，修改它不会影响导出
+    @Deprecated
+    public SimpleDateFormat getSdf() {
+        return dateFormats.newSimpleDateFormat();
+    }
+
+    // 兼容之前的SimpleDateFormat设置，复制一份使用，保留其中的日期格式、时区和Locale
+    @Deprecated
+    public void setSdf(SimpleDateFormat sdf) {
+        this.dateFormats = DateFormats.from(sdf);
+    }
+
     // 创建表头
     public XSSFSheet createHead(XSSFSheet sheet, int r, int c) {
         for (int i = 0; i < r; i++) {
@@ -264,6 +333,28 @@ public class XSSExcelColorTool<T> {
         return sheet;
     }
 
+    // 计算表头每一列的宽度
+    private void calculateHeaderWidths(List<Column> cellList) {
+        for (Column tpamscolumn : cellList) {
+            int c = tpamscolumn.getCol();
+            int cLen = tpamscolumn.getCLen();
+            int endC = c + cLen - (cLen > 0 ? 1 : 0);
+            String content = tpamscolumn.getContent() != null ? tpamscolumn.getContent() : "";
+            int contentWidth = calculateWidth(content);
+            if (cLen > 0) {
+                int widthPerCol = Math.max(contentWidth / cLen, DEFAULT_WIDTH);
+                for (int col = c; col <= endC; col++) {
+                    getColumnWidths().merge(col, widthPerCol);
+                }
+            } else {
+                getColumnWidths().merge(c, contentWidth);
+            }
+            if (tpamscolumn.isHasChildren()) {
+                calculateHeaderWidths(tpamscolumn.getCellList());
+            }
+        }
+    }
+
     public void createHead(List<Column> cellList, XSSFSheet sheet, int rowIndex) {
         XSSFRow row = sheet.getRow(rowIndex);
         for (Column tpamscolumn : cellList) {
@@ -283,10 +374,10 @@ public class XSSExcelColorTool<T> {
             if (cLen > 0) {
                 int widthPerCol = Math.max(contentWidth / cLen, DEFAULT_WIDTH);
                 for (int col = c; col <= endC; col++) {
-                    headerWidths.merge(col, widthPerCol, Math::max);
+                    getColumnWidths().merge(col, widthPerCol);
                 }
             } else {
-                headerWidths.merge(c, contentWidth, Math::max);
+                getColumnWidths().merge(c, contentWidth);
             }
 
             if (r != endR || c != endC) {
@@ -315,24 +406,17 @@ public class XSSExcelColorTool<T> {
         }
     }
 
-    private InputStream save(XSSFWorkbook workbook) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try {
-            workbook.write(bos);
-            return new ByteArrayInputStream(bos.toByteArray());
-        } finally {
-            bos.close();
-        }
+    // 保存到调用方的输出流，不关闭输出流
+    private void save(XSSFWorkbook workbook, OutputStream out) throws IOException {
+        workbook.write(out);
+        out.flush();
     }
 
-    // 获取叶子节点列
-    private void getColumnList(List<Column> list, List<Column> listCol) {
-        for (Column column : list) {
-            if (column.getFieldName() != null) {
-                listCol.add(column);
-            }
-            getColumnList(column.getCellList(), listCol);
-        }
+    // InputStream直接读取写入时的字节数组，不再复制一份
+    private InputStream save(XSSFWorkbook workbook) throws IOException {
+        DirectByteArrayOutputStream bos = new DirectByteArrayOutputStream();
+        workbook.write(bos);
+        return bos.toInputStream();
     }
 
     // Column 转换方法（未修改）
@@ -363,13 +447,20 @@ public class XSSExcelColorTool<T> {
                 i++;
             }
         }
-        setParm(lc, "0");
-        List<Column> s = TreeTool.buildByRecursive(lc, "0");
-        setColNum(lc, s, s);
-        return s;
+        return CompiledHeader.compile(lc, "0").getColumns();
     }
 
     public List<Column> columnTransformer(List<T> list, String id, String pid, String content, String fieldName, String rootid) throws Exception {
+        return compileHeader(list, id, pid, content, fieldName, rootid).getColumns();
+    }
+
+    // 编译表头 同样的表头定义直接使用缓存的布局，适合同一个报表反复导出，getColumns()可以直接传给exportExcel
+    public CompiledHeader compileHeader(List<T> list, String id, String pid, String content, String fieldName, String rootid) throws Exception {
+        return CompiledHeader.compile(toColumnList(list, id, pid, content, fieldName), rootid);
+    }
+
+    // 把表头数据转换成一条一条的column对象
+    private List<Column> toColumnList(List<T> list, String id, String pid, String content, String fieldName) throws Exception {
         List<Column> lc = new ArrayList<>();
         if (list.get(0) instanceof Map) {
             for (Map m : (List<Map>) list) {
@@ -397,40 +488,15 @@ public class XSSExcelColorTool<T> {
                 lc.add(tpamscolumn);
             }
         }
-        setParm(lc, rootid);
-        List<Column> s = TreeTool.buildByRecursive(lc, rootid);
-        setColNum(lc, s, s);
-        return s;
+        return lc;
     }
 
     public static void setParm(List<Column> list, String rootid) {
-        int totalRow = TreeTool.getMaxStep(list);
-        int totalCol = TreeTool.getDownChildren(list, rootid);
-        for (Column poit : list) {
-            int treeStep = TreeTool.getTreeStep(list, poit.getPid(), 0);
-            poit.setTreeStep(treeStep);
-            poit.setRow(treeStep);
-            boolean hasCh = TreeTool.hasChild(list, poit);
-            poit.setHasChildren(hasCh);
-            poit.setRLen(hasCh ? 0 : totalRow - treeStep);
-            poit.setTotalRow(totalRow);
-            poit.setTotalCol(totalCol);
-        }
+        new HeaderLayout(list).setParm(rootid);
     }
 
     public static void setColNum(List<Column> list, List<Column> treeList, List<Column> flist) {
-        List<Column> new_list = new ArrayList<>();
-        for (Column poit : treeList) {
-            int col = TreeTool.getFCol(list, poit.getPid()).getCol();
-            int brotherCol = TreeTool.getBrotherChilNum(list, poit);
-            poit.setCol(col + brotherCol);
-            int cLen = TreeTool.getDownChildren(list, poit.getId());
-            poit.setCLen(cLen <= 1 ? 0 : cLen);
-            new_list.addAll(poit.getCellList());
-        }
-        if (!new_list.isEmpty()) {
-            setColNum(list, new_list, flist);
-        }
+        new HeaderLayout(list).setColNum(treeList);
     }
 
     // 以下是导入Excel相关方法，未修改，保持原样
@@ -441,9 +507,7 @@ public class XSSExcelColorTool<T> {
                 case NUMERIC:
                 case FORMULA: {
                     if (DateUtil.isCellDateFormatted(cell)) {
-                        Date date = cell.getDateCellValue();
-                        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                        cellvalue = sdf.format(date);
+                        cellvalue = IMPORT_DATE_FORMATS.format(cell.getLocalDateTimeCellValue());
                     } else {
                         cellvalue = String.valueOf(cell.getNumericCellValue());
                     }
@@ -482,49 +546,30 @@ public class XSSExcelColorTool<T> {
         }
     }
 
-    private boolean isMergedRegion(Sheet sheet, int row, int column) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress range = sheet.getMergedRegion(i);
-            int firstColumn = range.getFirstColumn();
-            int lastColumn = range.getLastColumn();
-            int firstRow = range.getFirstRow();
-            int lastRow = range.getLastRow();
-            if (row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private String getMergedRegionValue(Sheet sheet, int row, int column) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress ca = sheet.getMergedRegion(i);
-            int firstColumn = ca.getFirstColumn();
-            int lastColumn = ca.getLastColumn();
-            int firstRow = ca.getFirstRow();
-            int lastRow = ca.getLastRow();
-            if (row >= firstRow && row <= lastRow) {
-                if (column >= firstColumn && column <= lastColumn) {
-                    Row fRow = sheet.getRow(firstRow);
-                    Cell fCell = fRow.getCell(firstColumn);
-                    return getStringCellValue(fCell);
-                }
-            }
+    private String getMergedRegionValue(Sheet sheet, MergedRegionIndex merged, int region) {
+        String value = merged.getValue(region);
+        if (value == null) {
+            Row fRow = sheet.getRow(merged.getFirstRow(region));
+            value = fRow == null ? "" : getStringCellValue(fRow.getCell(merged.getFirstColumn(region)));
+            merged.setValue(region, value);
         }
-        return "";
+        return value;
     }
 
     /**
      * 获取excel的值 返回的 List<List<String>>的数据结构
+     * xlsx和xls文件使用ExcelStreamReader逐行解析，不加载整个workbook，结果相同
      *
      * @param fileUrl  文件路径
      * @param sheetNum 工作表（第几分页[1,2,3.....]）
      * @return List<List < String>>
      */
     public List<List<String>> getExcelValues(String fileUrl, int sheetNum) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getValues(sheetNum);
+            }
+        }
         List<List<String>> values = new ArrayList<List<String>>();
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
@@ -533,6 +578,7 @@ public class XSSExcelColorTool<T> {
         //int sheetCount1= workbook.getNumberOfSheets();
         Sheet sheet = workbook.getSheetAt(sheetCount); //读取第几个工作表sheet
         int rowNum = sheet.getLastRowNum();//有多少行
+        MergedRegionIndex merged = MergedRegionIndex.of(sheet);//合并单元格的索引，每个工作表建一次
         for (int i = 1; i <= rowNum; i++) {
             Row row = sheet.getRow(i);//第i行
             if (row == null) {//过滤空行
@@ -543,13 +589,10 @@ public class XSSExcelColorTool<T> {
             for (int j = 0; j < colCount; j++) {//第j列://+1是因为最后一列是空 也算进去
                 Cell cell = row.getCell(j);
                 String cellValue;
-                boolean isMerge = false;
-                if (cell != null) {
-                    isMerge = isMergedRegion(sheet, i, cell.getColumnIndex());
-                }
+                int region = cell == null ? -1 : merged.find(i, cell.getColumnIndex());
                 //判断是否具有合并单元格
-                if (isMerge) {
-                    cellValue = getMergedRegionValue(sheet, row.getRowNum(), cell.getColumnIndex());
+                if (region >= 0) {
+                    cellValue = getMergedRegionValue(sheet, merged, region);
                 } else {
                     cellValue = getStringCellValue(cell);
                 }
@@ -582,12 +625,18 @@ public class XSSExcelColorTool<T> {
 
     /**
      * 根据sheet数获取excel的值 返回List<List<Map<String,String>>>的数据结构
+     * xlsx和xls文件使用ExcelStreamReader逐行解析，不加载整个workbook，结果相同
      *
      * @param fileUrl  文件路径
      * @param sheetNum 工作表（第几分页[1,2,3.....]）
      * @return List<List < Map < String, String>>>
      */
     public List<List<Map<String, String>>> getExcelMapVal(String fileUrl, int sheetNum) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getMapValues(sheetNum);
+            }
+        }
         List<List<Map<String, String>>> values = new ArrayList<List<Map<String, String>>>();
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
@@ -596,6 +645,7 @@ public class XSSExcelColorTool<T> {
         //int sheetCount1= workbook.getNumberOfSheets();
         Sheet sheet = workbook.getSheetAt(sheetCount); //读取第几个工作表sheet
         int rowNum = sheet.getLastRowNum();//有多少行
+        MergedRegionIndex merged = MergedRegionIndex.of(sheet);//合并单元格的索引，每个工作表建一次
         Row rowTitle = sheet.getRow(0);//第i行
         int colCount = sheet.getRow(0).getLastCellNum();//用表头去算有多少列，不然从下面的行计算列的话，空的就不算了
         for (int i = 1; i <= rowNum; i++) {
@@ -610,13 +660,10 @@ public class XSSExcelColorTool<T> {
                 Cell cellTitle = rowTitle.getCell(j);
                 String cellValue;
                 String cellKey = getStringCellValue(cellTitle);
-                boolean isMerge = false;
-                if (cell != null) {
-                    isMerge = isMergedRegion(sheet, i, cell.getColumnIndex());
-                }
+                int region = cell == null ? -1 : merged.find(i, cell.getColumnIndex());
                 //判断是否具有合并单元格
-                if (isMerge) {
-                    cellValue = getMergedRegionValue(sheet, row.getRowNum(), cell.getColumnIndex());
+                if (region >= 0) {
+                    cellValue = getMergedRegionValue(sheet, merged, region);
                 } else {
                     cellValue = getStringCellValue(cell);
                 }
@@ -628,6 +675,53 @@ public class XSSExcelColorTool<T> {
         return values;
     }
 
+    /**
+     * 根据sheet数获取excel的值 返回List<ImportRow>的数据结构
+     * 读取的行和getExcelMapVal相同(跳过空行)，每一行只保存值的数组，所有行共用一个 表头 -> 列 的字典，
+     * 按表头取值用row.get(表头)或row.asMap()，需要getExcelMapVal的结构时用row.toCellMaps()
+     *
+     * @param fileUrl  文件路径
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @return List<ImportRow>
+     */
+    public List<ImportRow> getExcelRows(String fileUrl, int sheetNum) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            return reader.getImportRows(sheetNum);
+        }
+    }
+
+    /**
+     * 分批读取excel 每读够batchSize行调用一次handler.onRowBatch，内存中只有一批行，适合分批写入数据库
+     * 读取的行和getExcelRows相同
+     *
+     * @param fileUrl   文件路径
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readExcelRows(String fileUrl, int sheetNum, int batchSize, ImportRowHandler handler) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            reader.readBatches(sheetNum, batchSize, handler);
+        }
+    }
+
+    /**
+     * 分批读取excel handler.onRowBatch在线程池中调用，处理上一批的同时读取下一批，批次按顺序依次处理
+     *
+     * @param fileUrl   文件路径
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @param executor  处理批次的线程池
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readExcelRows(String fileUrl, int sheetNum, int batchSize, ImportRowHandler handler, ExecutorService executor) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            reader.readBatches(sheetNum, batchSize, handler, executor);
+        }
+    }
+
     /**
      * 获取当前excel的工作表sheet总数
      *
@@ -636,6 +730,11 @@ public class XSSExcelColorTool<T> {
      * @throws Exception
      */
     public int hasSheetCount(String fileUrl) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getSheetCount();
+            }
+        }
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
         Workbook workbook = WorkbookFactory.create(is);
@@ -6,12 +6,25 @@ import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.RegionUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.*;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * excel处理工具
@@ -29,6 +42,14 @@ import java.util.*;
 @Data
 public class XSSExcelTool<T> {
 
+    /**
+     * 导入时日期单元格的格式
+     */
+    private static final DateFormats IMPORT_DATE_FORMATS = DateFormats.of(DateFormats.IMPORT_PATTERN);
+    /**
+     * 并行导出时每个分块默认的行数
+     */
+    public static final int DEFAULT_PARALLEL_CHUNK_ROWS = 65535;
     /**
      * excel 对象
      */
@@ -54,9 +75,42 @@ public class XSSExcelTool<T> {
      */
     private XSSFCellStyle styleBody;
     /**
-     * 日期格式化,默认yyyy-MM-dd HH:mm:ss
+     * 日期格式化,默认yyyy-MM-dd HH:mm:ss;按格式缓存的DateTimeFormatter,线程安全
+     */
+    private DateFormats dateFormats = DateFormats.defaults();
+    /**
+     * 是否按数据类型写入单元格(数值、布尔、日期写成excel原生类型),默认全部按文本写入
+     */
+    private boolean typedCell;
+    /**
+     * 单元格写值工具,第一次写入行内数据时创建
+     */
+    private CellValueWriter cellValueWriter;
+    /**
+     * 表头渲染工具,第一次写表头时创建
+     */
+    private HeaderRenderer headerRenderer;
+    /**
+     * 流式导出的workbook(SXSSF),只有开启流式导出时才有值,样式和workbook共用
+     */
+    private SXSSFWorkbook streamWorkbook;
+    /**
+     * 流式导出时内存中保留的行数(滑动窗口),超出窗口的行会被写入临时文件;小于等于0表示不开启流式导出
+     */
+    private int rowAccessWindowSize;
+    /**
+     * 并行导出时每个分块的行数,一个sheet按这个行数分成多块在多个线程中生成,和sheet的拆分无关
+     */
+    private int parallelChunkRows = DEFAULT_PARALLEL_CHUNK_ROWS;
+    /**
+     * sheet拆分策略,默认按xlsx每个sheet最多1048576行(包含表头)
+     */
+    private SheetSplitPolicy splitPolicy = SheetSplitPolicy.xlsx();
+    /**
+     * 列宽估算策略,为null时所有列使用固定的colWidth;设置后按表头和抽样到的数据计算列宽,colWidth为最小宽度
+     * 原生xlsx导出(exportNativeExcel)在写数据前就要写入列宽,不支持
      */
-    private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private ColumnWidthEstimator widthEstimator;
 
     /**
      * 无参数 初始化 对象
@@ -80,7 +134,7 @@ public class XSSExcelTool<T> {
         this.rowHeight = rowHeight;
         this.title = title;
         this.workbook = new XSSFWorkbook();
-        this.sdf = new SimpleDateFormat(dateFormat);
+        this.dateFormats = DateFormats.of(dateFormat);
         init(0);
     }
 
@@ -106,6 +160,29 @@ public class XSSExcelTool<T> {
         init(0);
     }
 
+    /**
+     * 流式导出 初始化 对象
+     * 表头只写一次，行内数据按滑动窗口写入临时文件，堆内存占用和数据行数无关
+     *
+     * @param title
+     * @param colWidth
+     * @param rowHeight
+     * @param flag
+     * @param rowAccessWindowSize 内存中保留的行数,小于等于0表示不开启流式导出
+     */
+    public XSSExcelTool(String title, int colWidth, int rowHeight, int flag, int rowAccessWindowSize) {
+        this.colWidth = colWidth;
+        this.rowHeight = rowHeight;
+        this.title = title;
+        this.workbook = new XSSFWorkbook();
+        init(flag);
+        if (rowAccessWindowSize > 0) {
+            this.rowAccessWindowSize = rowAccessWindowSize;
+            this.streamWorkbook = new SXSSFWorkbook(this.workbook, rowAccessWindowSize);
+            this.streamWorkbook.setCompressTempFiles(true);
+        }
+    }
+
     //内部统一调用的样式初始化
     private void init(int styleFlag) {
         this.styleHead = this.workbook.createCellStyle();
@@ -142,7 +219,7 @@ public class XSSExcelTool<T> {
      */
     public void exportExcel(List<Column> headerCellList, List<T> rowList, String filePath, boolean flag) throws Exception {
         splitDataToSheets(rowList, headerCellList, flag, false);
-        save(this.workbook, filePath);
+        save(getOutputWorkbook(), filePath);
     }
 
     /**
@@ -157,7 +234,7 @@ public class XSSExcelTool<T> {
      */
     public void exportExcel(List<Column> headerCellList, List<T> rowList, String FilePath, boolean flag, boolean rowFlag) throws Exception {
         splitDataToSheets(rowList, headerCellList, flag, rowFlag);
-        save(this.workbook, FilePath);
+        save(getOutputWorkbook(), FilePath);
     }
 
     /**
@@ -170,10 +247,30 @@ public class XSSExcelTool<T> {
      * @throws Exception
      */
     public XSSFWorkbook exportWorkbook(List<Column> listTpamscolumn, List<T> datas, boolean flag) throws Exception {
+        if (isStreaming()) {
+            throw new IllegalStateException("流式导出模式请使用exportStreamWorkbook");
+        }
         splitDataToSheets(datas, listTpamscolumn, flag, false);
         return this.workbook;
     }
 
+    /**
+     * 流式导出模式下返回workbook,已写出的行不在内存中,使用完需要调用dispose()删除临时文件
+     *
+     * @param listTpamscolumn 表头数据
+     * @param datas           行内数据
+     * @param flag            是否写入行内数据
+     * @return
+     * @throws Exception
+     */
+    public SXSSFWorkbook exportStreamWorkbook(List<Column> listTpamscolumn, List<T> datas, boolean flag) throws Exception {
+        if (!isStreaming()) {
+            throw new IllegalStateException("未开启流式导出模式");
+        }
+        splitDataToSheets(datas, listTpamscolumn, flag, false);
+        return this.streamWorkbook;
+    }
+
     /**
      * 导出表格 有返回值
      *
@@ -186,139 +283,564 @@ public class XSSExcelTool<T> {
      */
     public InputStream exportExcel(List<Column> headerCellList, List<T> datas, boolean flag, boolean rowFlag) throws Exception {
         splitDataToSheets(datas, headerCellList, flag, rowFlag);
-        return save(this.workbook);
+        return save(getOutputWorkbook());
     }
 
     /**
-     * 导出Excel,适用于web导出excel
+     * 导出表格 直接写入调用方的输出流(例如servlet的response)，不经过内存中的字节数组，输出流由调用方关闭
      *
-     * @param sheet           excel
-     * @param data            行内数据
      * @param headerCellList 表头数据
-     * @param flag            只输出表头数据
-     * @param rowFlag         输出展示数据的结构(表头下面行的数据)
+     * @param rowList        行内数据
+     * @param out            输出流
+     * @param flag           是否加载行数据
      * @throws Exception
      */
-    private void writeSheet(XSSFSheet sheet, List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
-        sheet.setDefaultColumnWidth(colWidth);
-        sheet.setDefaultRowHeightInPoints(rowHeight);
-        sheet = createHead(sheet, headerCellList.get(0).getTotalRow(), headerCellList.get(0).getTotalCol());
-        createHead(headerCellList, sheet, 0);
-        if (flag) {
-            writeSheetContent(headerCellList, data, sheet, headerCellList.get(0).getTotalRow(), rowFlag);
+    public void exportExcel(List<Column> headerCellList, List<T> rowList, OutputStream out, boolean flag) throws Exception {
+        splitDataToSheets(rowList, headerCellList, flag, false);
+        save(getOutputWorkbook(), out);
+    }
+
+    /**
+     * 导出表格 直接写入调用方的通道，通道由调用方关闭
+     *
+     * @param headerCellList 表头数据
+     * @param rowList        行内数据
+     * @param channel        输出通道
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, List<T> rowList, WritableByteChannel channel, boolean flag) throws Exception {
+        exportExcel(headerCellList, rowList, Channels.newOutputStream(channel), flag);
+    }
+
+    /**
+     * 导出表格 无返回 行内数据边读取边写入，适用于数据库游标等不能一次加载到内存的数据
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, String filePath, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        save(getOutputWorkbook(), filePath);
+    }
+
+    /**
+     * 导出表格 无返回 行内数据来自Stream，导出结束后关闭Stream
+     *
+     * @param headerCellList 表头数据
+     * @param rowStream      行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, Stream<T> rowStream, String filePath, boolean flag) throws Exception {
+        try {
+            exportExcel(headerCellList, rowStream.iterator(), filePath, flag);
+        } finally {
+            rowStream.close();
         }
     }
 
     /**
-     * 拆分sheet，因为每个sheet不能超过65535，否则会报异常
+     * 导出表格 无返回 行内数据分页获取，pageSupplier返回空页(或null)时结束
      *
-     * @param data            行内数据
      * @param headerCellList 表头数据
-     * @param flag            只输出表头数据
-     * @param rowFlag         输出展示数据的结构(表头下面行的数据)
+     * @param pageSupplier   获取下一页行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
      * @throws Exception
      */
-    private void splitDataToSheets(List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
-        int dataCount = data.size();
-        int maxColumn = 65535;
-        int pieces = dataCount / maxColumn;
-        for (int i = 1; i <= pieces; i++) {
-            XSSFSheet sheet = this.workbook.createSheet(this.title + i);
-            List<T> subList = data.subList((i - 1) * maxColumn, i * maxColumn);
-            writeSheet(sheet, subList, headerCellList, flag, rowFlag);
+    public void exportExcel(List<Column> headerCellList, Supplier<List<T>> pageSupplier, String filePath, boolean flag) throws Exception {
+        exportExcel(headerCellList, new PageIterator<>(pageSupplier), filePath, flag);
+    }
+
+    /**
+     * 导出表格 有返回值 行内数据边读取边写入
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param flag           是否加载行数据
+     * @return
+     * @throws Exception
+     */
+    public InputStream exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        return save(getOutputWorkbook());
+    }
+
+    /**
+     * 导出表格 行内数据边读取边写入，直接写入调用方的输出流，输出流由调用方关闭
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param out            输出流
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, boolean flag) throws Exception {
+        splitDataToSheets(rowIterator, headerCellList, flag);
+        save(getOutputWorkbook(), out);
+    }
+
+    /**
+     * 导出表格 行内数据边读取边写入，直接写入调用方的通道，通道由调用方关闭
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param channel        输出通道
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportExcel(List<Column> headerCellList, Iterator<T> rowIterator, WritableByteChannel channel, boolean flag) throws Exception {
+        exportExcel(headerCellList, rowIterator, Channels.newOutputStream(channel), flag);
+    }
+
+    /**
+     * 返回workbook 行内数据边读取边写入
+     *
+     * @param listTpamscolumn 表头数据
+     * @param rowIterator     行内数据
+     * @param flag            是否写入行内数据
+     * @return
+     * @throws Exception
+     */
+    public XSSFWorkbook exportWorkbook(List<Column> listTpamscolumn, Iterator<T> rowIterator, boolean flag) throws Exception {
+        if (isStreaming()) {
+            throw new IllegalStateException("流式导出模式请使用exportStreamWorkbook");
+        }
+        splitDataToSheets(rowIterator, listTpamscolumn, flag);
+        return this.workbook;
+    }
+
+    /**
+     * 流式导出模式下返回workbook 行内数据边读取边写入
+     *
+     * @param listTpamscolumn 表头数据
+     * @param rowIterator     行内数据
+     * @param flag            是否写入行内数据
+     * @return
+     * @throws Exception
+     */
+    public SXSSFWorkbook exportStreamWorkbook(List<Column> listTpamscolumn, Iterator<T> rowIterator, boolean flag) throws Exception {
+        if (!isStreaming()) {
+            throw new IllegalStateException("未开启流式导出模式");
         }
-        XSSFSheet sheet = this.workbook.createSheet(this.title + (pieces + 1));
-        writeSheet(sheet, data.subList(pieces * maxColumn, dataCount), headerCellList, flag, rowFlag);
+        splitDataToSheets(rowIterator, listTpamscolumn, flag);
+        return this.streamWorkbook;
     }
 
     /**
-     * 把数据写入到单元格
+     * 导出表格 无返回 不经过POI的对象模型，直接生成xlsx的xml写入文件，适用于大数据量只导出数据的场景
+     * 表头、合并单元格、主体样式和exportExcel一致，行内数据边读取边写入
      *
      * @param headerCellList 表头数据
-     * @param datas           行内数据
-     * @param sheet           工作表（excel分页）
-     * @throws Exception void
-     */
-    private void writeSheetContent(List<Column> headerCellList, List<T> datas, XSSFSheet sheet, int rowIndex, boolean rowFlag) throws Exception {
-        XSSFRow row = null;
-        List<Column> listCol = new ArrayList<>();
-        rowFlag = false;
-        if (rowFlag) {//暂时没有用 后面扩展用
-            for (int i = 0, index = rowIndex; i < datas.size(); i++, index++) {
-                row = sheet.createRow(index);//创建行
-                for (int j = 0; j < headerCellList.size(); j++) {
-                    createColl(row, j, headerCellList.get(j).getFieldName(), datas.get(i));
+     * @param rowList        行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportNativeExcel(List<Column> headerCellList, List<T> rowList, String filePath, boolean flag) throws Exception {
+        exportNativeExcel(headerCellList, rowList.iterator(), filePath, flag);
+    }
+
+    /**
+     * 导出表格 无返回 不经过POI的对象模型，直接生成xlsx的xml写入文件
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param filePath       保存路径
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportNativeExcel(List<Column> headerCellList, Iterator<T> rowIterator, String filePath, boolean flag) throws Exception {
+        File file = new File(filePath);
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeNative(headerCellList, rowIterator, out, flag);
+        }
+    }
+
+    /**
+     * 导出表格 直接生成xlsx写入调用方的输出流，输出流由调用方关闭
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param out            输出流
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportNativeExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, boolean flag) throws Exception {
+        writeNative(headerCellList, rowIterator, out, flag);
+    }
+
+    /**
+     * 导出表格 直接生成xlsx写入调用方的通道，通道由调用方关闭
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param channel        输出通道
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    public void exportNativeExcel(List<Column> headerCellList, Iterator<T> rowIterator, WritableByteChannel channel, boolean flag) throws Exception {
+        //Channels.newOutputStream每次write都直接写通道，加一层缓冲
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+        writeNative(headerCellList, rowIterator, out, flag);
+        out.flush();
+    }
+
+    /**
+     * 直接生成xlsx写入输出流，按拆分策略换sheet
+     *
+     * @param headerCellList 表头数据
+     * @param data           行内数据
+     * @param out            输出流
+     * @param flag           是否加载行数据
+     * @throws Exception
+     */
+    private void writeNative(List<Column> headerCellList, Iterator<T> data, OutputStream out, boolean flag) throws Exception {
+        XlsxStreamWriter writer = new XlsxStreamWriter(out, this.dateFormats.getPattern(), this.styleBody.getAlignment(),
+                this.colWidth, this.rowHeight, this.typedCell);
+        ExportBackend backend = new XlsxExportBackend(writer);
+        newPipeline(headerCellList).write(backend, data, flag);
+        backend.finish();
+    }
+
+    /**
+     * 导出流程 表头整理、行内数据读取、日期格式化、sheet拆分和列宽抽样，各种格式共用
+     *
+     * @param headerCellList 表头数据
+     * @return
+     */
+    private ExportPipeline<T> newPipeline(List<Column> headerCellList) {
+        return new ExportPipeline<>(headerCellList, this.title, this.splitPolicy, this.dateFormats, this.typedCell,
+                this.widthEstimator);
+    }
+
+    /**
+     * 导出表格 无返回 多线程并行生成(每个sheet按parallelChunkRows分块)，生成完后按顺序合并成一个xlsx
+     * 使用CPU核数个线程，返回前等待所有线程结束
+     *
+     * @param headerCellList 表头数据
+     * @param rowList        行内数据
+     * @param filePath       保存路径
+     * @throws Exception
+     */
+    public void exportParallelExcel(List<Column> headerCellList, List<T> rowList, String filePath) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            exportParallelExcel(headerCellList, rowList.iterator(), filePath, executor);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * 导出表格 无返回 在指定的线程池中并行生成，生成完后按顺序合并成一个xlsx
+     * 迭代器在调用线程中读取，内存中最多有 线程池的并行数+1 个分块，每块parallelChunkRows行
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param filePath       保存路径
+     * @param executor       生成分块的线程池
+     * @throws Exception
+     */
+    public void exportParallelExcel(List<Column> headerCellList, Iterator<T> rowIterator, String filePath, ExecutorService executor) throws Exception {
+        exportParallelExcel(headerCellList, rowIterator, filePath, executor, defaultMaxPending(executor));
+    }
+
+    /**
+     * 导出表格 无返回 在指定的线程池中并行生成，生成完后按顺序合并成一个xlsx
+     * 迭代器在调用线程中读取，每个sheet按parallelChunkRows行分块，内存中的行数据最多为 maxPending × parallelChunkRows
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param filePath       保存路径
+     * @param executor       生成分块的线程池
+     * @param maxPending     内存中最多的分块数(包括正在读取的分块)，同时生成的分块最多maxPending-1个
+     * @throws Exception
+     */
+    public void exportParallelExcel(List<Column> headerCellList, Iterator<T> rowIterator, String filePath, ExecutorService executor,
+                                    int maxPending) throws Exception {
+        File file = new File(filePath);
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeParallel(headerCellList, rowIterator, out, executor, maxPending);
+        }
+    }
+
+    /**
+     * 导出表格 在指定的线程池中并行生成，合并后直接写入调用方的输出流，输出流由调用方关闭
+     * 内存中最多有 线程池的并行数+1 个分块，每块parallelChunkRows行
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param out            输出流
+     * @param executor       生成分块的线程池
+     * @throws Exception
+     */
+    public void exportParallelExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, ExecutorService executor) throws Exception {
+        writeParallel(headerCellList, rowIterator, out, executor, defaultMaxPending(executor));
+    }
+
+    /**
+     * 导出表格 在指定的线程池中并行生成，合并后直接写入调用方的输出流，输出流由调用方关闭
+     * 内存中的行数据最多为 maxPending × parallelChunkRows
+     *
+     * @param headerCellList 表头数据
+     * @param rowIterator    行内数据
+     * @param out            输出流
+     * @param executor       生成分块的线程池
+     * @param maxPending     内存中最多的分块数(包括正在读取的分块)，同时生成的分块最多maxPending-1个
+     * @throws Exception
+     */
+    public void exportParallelExcel(List<Column> headerCellList, Iterator<T> rowIterator, OutputStream out, ExecutorService executor,
+                                    int maxPending) throws Exception {
+        writeParallel(headerCellList, rowIterator, out, executor, maxPending);
+    }
+
+    /**
+     * 默认的分块数 线程池的并行数+1(读取中的一块)，并行数不超过CPU核数，不能确定时按CPU核数
+     *
+     * @param executor 线程池
+     * @return
+     */
+    private static int defaultMaxPending(ExecutorService executor) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int parallelism = cores;
+        if (executor instanceof ThreadPoolExecutor) {
+            parallelism = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+        } else if (executor instanceof ForkJoinPool) {
+            parallelism = ((ForkJoinPool) executor).getParallelism();
+        }
+        return Math.min(parallelism, cores) + 1;
+    }
+
+    /**
+     * 并行生成数据行的片段到临时文件，再按顺序拼接成各个sheet写入xlsx
+     * sheet的拆分和顺序导出一致，每个sheet再按parallelChunkRows行分成多块，同一个sheet的多块也同时生成
+     * 创建的临时文件都记录在files中，结束时全部删除；失败后还在生成的分块会尽快停止并删除自己的文件
+     *
+     * @param headerCellList 表头数据
+     * @param data           行内数据
+     * @param out            输出流
+     * @param executor       生成分块的线程池
+     * @param maxPending     内存中最多的分块数
+     * @throws Exception
+     */
+    private void writeParallel(List<Column> headerCellList, Iterator<T> data, OutputStream out, ExecutorService executor,
+                               int maxPending) throws Exception {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending必须大于0");
+        }
+        int chunkRows = this.parallelChunkRows;
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("parallelChunkRows必须大于0");
+        }
+        ExportPipeline<T> pipeline = newPipeline(headerCellList);
+        List<Column> listCol = pipeline.getLeafColumns();
+        SheetSplitPolicy policy = pipeline.resolveSplitPolicy(SheetSplitPolicy.XLSX_MAX_ROWS);
+        int headerRows = headerCellList.get(0).getTotalRow();
+        RowValueReader reader = new RowValueReader(listCol);
+        int[] order = pipeline.getWriteOrder();
+        //每个sheet的分块，按顺序
+        List<List<Future<File>>> sheets = new ArrayList<>();
+        List<Future<File>> parts = new ArrayList<>();
+        List<File> files = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean closed = new AtomicBoolean();
+        int waited = 0;
+        try {
+            do {
+                SheetSplitPolicy.Counter counter = policy.start(headerRows, listCol.size());
+                List<Future<File>> sheetParts = new ArrayList<>();
+                sheets.add(sheetParts);
+                int rowIndex = headerRows;
+                while (counter.hasRoom() && data.hasNext()) {
+                    List<T> chunk = new ArrayList<>(Math.min(chunkRows, 1024));
+                    while (chunk.size() < chunkRows && counter.hasRoom() && data.hasNext()) {
+                        T v = data.next();
+                        chunk.add(v);
+                        if (counter.isCountingBytes()) {
+                            //和顺序导出按同样的单元格估算，分块结果和顺序导出一致
+                            for (int j : order) {
+                                counter.addCell(pipeline.getValue(reader, v, j));
+                            }
+                        }
+                        counter.endRow();
+                    }
+                    int firstRow = rowIndex;
+                    rowIndex += chunk.size();
+                    Future<File> part = executor.submit(() -> writeRowsPart(pipeline, chunk, firstRow, files, closed));
+                    sheetParts.add(part);
+                    parts.add(part);
+                    //控制内存中的分块数量，读取下一个分块前等待最早的分块生成完
+                    while (parts.size() - waited >= maxPending) {
+                        parts.get(waited++).get();
+                    }
+                }
+            } while (data.hasNext());
+            XlsxStreamWriter writer = new XlsxStreamWriter(out, this.dateFormats.getPattern(), this.styleBody.getAlignment(),
+                    this.colWidth, this.rowHeight, this.typedCell);
+            for (int i = 0; i < sheets.size(); i++) {
+                XlsxSheetWriter sheet = writer.newSheet(this.title + (i + 1));
+                sheet.writeHead(headerCellList);
+                for (Future<File> part : sheets.get(i)) {
+                    sheet.appendRows(part.get());
                 }
             }
-        } else {
-            getColumnList(headerCellList, listCol);
-            for (int i = 0, index = rowIndex; i < datas.size(); i++, index++) {
-                row = sheet.createRow(index);//创建行
-                for (int j = 0; j < listCol.size(); j++) {
-                    Column c = listCol.get(j);
-                    createCol(row, c, datas.get(i));
+            writer.finish();
+        } finally {
+            //先标记结束，之后才创建或写完的文件由生成的线程自己删除
+            closed.set(true);
+            for (Future<File> part : parts) {
+                part.cancel(true);
+            }
+            synchronized (files) {
+                for (File file : files) {
+                    file.delete();
                 }
-
             }
         }
     }
 
     /**
-     * 根据list 来创建单元格 暂时没有用
+     * 生成一块数据行的xml片段到临时文件,在线程池中执行
+     * 导出已经结束(失败)或者线程被中断时停止写入，删除临时文件
      *
-     * @param row
-     * @param j
-     * @param finame
-     * @param t
-     */
-    private void createColl(XSSFRow row, int j, String finame, T t) {
-        XSSFCell cell = row.createCell(j);  //创建单元格
-        cell.setCellStyle(this.styleBody); //设置单元格样式
-        String text = "";
-        if (t instanceof List) {
-            List<Map> temp = (List<Map>) t;
-            if (j >= temp.size()) {
-                return;
+     * @param pipeline 导出流程
+     * @param rows     这一块的行内数据
+     * @param firstRow 这一块在sheet中的第一行
+     * @param files    创建的临时文件
+     * @param closed   导出是否已经结束
+     * @return
+     * @throws Exception
+     */
+    private File writeRowsPart(ExportPipeline<T> pipeline, List<T> rows, int firstRow, List<File> files,
+                               AtomicBoolean closed) throws Exception {
+        if (closed.get()) {
+            throw new InterruptedException();
+        }
+        File part = File.createTempFile("freedom-excel-rows", ".xml");
+        files.add(part);
+        boolean done = false;
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(part))) {
+            ExportBackend.SheetWriter sheetWriter = XlsxExportBackend.wrap(XlsxSheetWriter.rows(os, this.typedCell));
+            Iterator<T> it = rows.iterator();
+            Iterator<T> checked = new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    if (closed.get() || Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException();
+                    }
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return it.next();
+                }
+            };
+            //行数已经在分块时按拆分策略控制，这里全部写入；读取器每次单独创建，日期格式化是线程安全的，各个分块共用
+            pipeline.writeRows(sheetWriter, firstRow, checked, SheetSplitPolicy.xlsx().start(0, 0), null);
+            sheetWriter.finish(null);
+            done = true;
+        } finally {
+            if (!done || closed.get()) {
+                part.delete();
             }
-            text = String.valueOf(temp.get(j).get(finame) == null ? "" : temp.get(j).get(finame));
         }
-        XSSFRichTextString richString = new XSSFRichTextString(text);
-        cell.setCellValue(richString);
+        return part;
     }
 
     /**
-     * 把column的columnList整理成一个list<column> 过滤表头的脏数据
+     * 拆分sheet，每个sheet的大小由拆分策略决定(默认按xlsx的最大行数)
      *
-     * @param list    表头数据
-     * @param listCol 返回新的list
+     * @param data            行内数据
+     * @param headerCellList 表头数据
+     * @param flag            只输出表头数据
+     * @param rowFlag         输出展示数据的结构(表头下面行的数据) 暂时没有用
+     * @throws Exception
      */
-    private void getColumnList(List<Column> list, List<Column> listCol) {
-        for (Column column : list) {
-            if (column.getFieldName() != null) {
-                listCol.add(column);
-            }
-            List<Column> listChildren = column.getCellList();
-            if (listChildren.size() > 0) {
-                getColumnList(listChildren, listCol);
-            }
+    private void splitDataToSheets(List<T> data, List<Column> headerCellList, boolean flag, boolean rowFlag) throws Exception {
+        splitDataToSheets(data.iterator(), headerCellList, flag);
+    }
+
+    /**
+     * 拆分sheet，行内数据边读取边写入，当前sheet达到拆分策略的上限且还有数据时新建sheet
+     *
+     * @param data           行内数据
+     * @param headerCellList 表头数据
+     * @param flag           只输出表头数据
+     * @throws Exception
+     */
+    private void splitDataToSheets(Iterator<T> data, List<Column> headerCellList, boolean flag) throws Exception {
+        ExportBackend backend = new PoiExportBackend(getOutputWorkbook(), getHeaderRenderer(), getCellValueWriter(),
+                this.styleBody, this.colWidth, this.rowHeight, null);
+        newPipeline(headerCellList).write(backend, data, flag);
+    }
+
+    /**
+     * 是否开启了流式导出
+     *
+     * @return
+     */
+    public boolean isStreaming() {
+        return this.streamWorkbook != null;
+    }
+
+    /**
+     * 最终要写出的workbook
+     *
+     * @return
+     */
+    private Workbook getOutputWorkbook() {
+        if (isStreaming()) {
+            return this.streamWorkbook;
         }
+        return this.workbook;
     }
 
     /**
      * 保存Excel到InputStream，此方法适合web导出excel
+     * InputStream直接读取写入时的字节数组，不再复制一份；大文件请使用写入OutputStream的exportExcel
      *
      * @param workbook
      * @return
      */
-    private InputStream save(XSSFWorkbook workbook) {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    private InputStream save(Workbook workbook) {
+        DirectByteArrayOutputStream bos = new DirectByteArrayOutputStream();
         try {
             workbook.write(bos);
-            InputStream bis = new ByteArrayInputStream(bos.toByteArray());
-            return bis;
+            return bos.toInputStream();
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e);
+        } finally {
+            dispose(workbook);
+        }
+    }
+
+    /**
+     * 保存Excel到调用方的输出流，不关闭输出流
+     *
+     * @param workbook
+     * @param out
+     * @throws IOException
+     */
+    private void save(Workbook workbook, OutputStream out) throws IOException {
+        try {
+            workbook.write(out);
+            out.flush();
+        } finally {
+            dispose(workbook);
         }
     }
 
@@ -329,7 +851,7 @@ public class XSSExcelTool<T> {
      * @param filePath
      * @throws IOException
      */
-    private void save(XSSFWorkbook workbook, String filePath) {
+    private void save(Workbook workbook, String filePath) {
         File file = new File(filePath);
         if (!file.getParentFile().exists()) {
             file.getParentFile().mkdirs();
@@ -348,6 +870,18 @@ public class XSSExcelTool<T> {
             }
         } catch (Exception e1) {
         }
+        dispose(workbook);
+    }
+
+    /**
+     * 流式导出写出后删除临时文件
+     *
+     * @param workbook
+     */
+    private void dispose(Workbook workbook) {
+        if (workbook instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) workbook).dispose();
+        }
     }
 
     /**
@@ -360,7 +894,7 @@ public class XSSExcelTool<T> {
      * @return
      * @throws Exception
      */
-    public int createRowVal(XSSFRow row, Column tpamscolumn, T v, int j) throws Exception {
+    public int createRowVal(Row row, Column tpamscolumn, T v, int j) throws Exception {
         //遍历标题
         if (tpamscolumn.getCellList() != null && tpamscolumn.getCellList().size() > 0) {
             for (int i = 0; i < tpamscolumn.getCellList().size(); i++) {
@@ -381,55 +915,91 @@ public class XSSExcelTool<T> {
      * @param v
      * @throws Exception
      */
-    public void createCol(XSSFRow row, Column tpamscolumn, T v) throws Exception {
-        XSSFCell cell = row.createCell(tpamscolumn.getCol());  //创建单元格
-        cell.setCellStyle(this.styleBody); //设置单元格样式
-        final Object[] value = {null};
-        if (v instanceof Map) {
-            Map m = (Map) v;
-            m.forEach((k, val) -> {
-                if (k.equals(tpamscolumn.getFieldName()) && !tpamscolumn.isHasChildren()) {
-                    value[0] = val;
-                }
-            });
-        } else {
-            Class<?> cls = v.getClass();// 拿到该类
-            Field[] fields = cls.getDeclaredFields();// 获取实体类的所有属性，返回Field数组
-            for (int i = 0; i < fields.length; i++) {
-                Field f = fields[i];
-                f.setAccessible(true); // 设置些属性是可以访问的
-                if (tpamscolumn.getFieldName().equals(f.getName()) && !tpamscolumn.isHasChildren())// && !tpamscolumn.isHasChilren()
-                {
-                    value[0] = f.get(v);
-                }
-                if (value[0] instanceof Date) {
-                    value[0] = parseDate((Date) value[0]);
-                }
-            }
+    public void createCol(Row row, Column tpamscolumn, T v) throws Exception {
+        createCol(row, tpamscolumn, v, new RowValueReader(Collections.singletonList(tpamscolumn)), 0);
+    }
+
+    /**
+     * 创建单元格 单元格的值通过预先整理好的读取器按下标读取
+     *
+     * @param row         Excel对应的行
+     * @param tpamscolumn 当前单元格对象
+     * @param v
+     * @param reader      行内数据读取器
+     * @param index       当前单元格在读取器中的下标
+     * @return 写入的值
+     * @throws Exception
+     */
+    private Object createCol(Row row, Column tpamscolumn, T v, RowValueReader reader, int index) throws Exception {
+        Cell cell = row.createCell(tpamscolumn.getCol());  //创建单元格
+        Object value = reader.get(v, index);
+        if (!this.typedCell && DateFormats.isDate(value)) {
+            value = parseDate(value);
         }
-        if (value[0] != null) {
-            XSSFRichTextString richString = new XSSFRichTextString(value[0].toString());
-            cell.setCellValue(richString);
+        getCellValueWriter().write(cell, value, this.styleBody); //设置单元格样式和值
+        return value;
+    }
+
+    /**
+     * 表头渲染工具,第一次写表头时创建,拆分出的多个sheet共用
+     *
+     * @return
+     */
+    public HeaderRenderer getHeaderRenderer() {
+        if (this.headerRenderer == null) {
+            this.headerRenderer = new HeaderRenderer(this.workbook, this.styleHead, true);
         }
+        return this.headerRenderer;
+    }
 
+    /**
+     * 单元格写值工具
+     *
+     * @return
+     */
+    public CellValueWriter getCellValueWriter() {
+        if (this.cellValueWriter == null) {
+            this.cellValueWriter = new CellValueWriter(this.workbook, this.dateFormats.getPattern(), this.typedCell);
+        }
+        return this.cellValueWriter;
     }
 
     /**
-     * 时间转换
+     * 时间转换 支持Date、Calendar和java.time的日期类型
      *
      * @param date
      * @return String
      */
-    private String parseDate(Date date) {
+    private String parseDate(Object date) {
         String dateStr = "";
         try {
-            dateStr = this.sdf.format(date);
+            dateStr = this.dateFormats.format(date);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return dateStr;
     }
 
+    /**
+     * 日期格式,兼容之前的SimpleDateFormat设置,请使用getDateFormats
+     *
+     * @return 新的SimpleDateFormat,修改它不会影响导出
+     */
+    @Deprecated
+    public SimpleDateFormat getSdf() {
+        return this.dateFormats.newSimpleDateFormat();
+    }
+
+    /**
+     * 日期格式,兼容之前的SimpleDateFormat设置,请使用setDateFormats
+     *
+     * @param sdf 复制一份使用，保留其中的日期格式、时区和Locale
+     */
+    @Deprecated
+    public void setSdf(SimpleDateFormat sdf) {
+        this.dateFormats = DateFormats.from(sdf);
+    }
+
 
     /**
      * 根据数据的行数和列数，在excel创建单元格cell
@@ -439,11 +1009,11 @@ public class XSSExcelTool<T> {
      * @param c       excel 列数
      * @return
      */
-    public XSSFSheet createHead(XSSFSheet sheetCo, int r, int c) {
+    public <S extends Sheet> S createHead(S sheetCo, int r, int c) {
         for (int i = 0; i < r; i++) {
-            XSSFRow row = sheetCo.createRow(i);
+            Row row = sheetCo.createRow(i);
             for (int j = 0; j < c; j++) {
-                XSSFCell cell = row.createCell(j);
+                Cell cell = row.createCell(j);
             }
         }
         return sheetCo;
@@ -456,8 +1026,8 @@ public class XSSExcelTool<T> {
      * @param sheetCo  哪个分页
      * @param rowIndex 当前Excel的第几行
      */
-    public void createHead(List<Column> cellList, XSSFSheet sheetCo, int rowIndex) {
-        XSSFRow row = sheetCo.getRow(rowIndex);
+    public void createHead(List<Column> cellList, Sheet sheetCo, int rowIndex) {
+        Row row = sheetCo.getRow(rowIndex);
 //        if(row == null)row = sheetCo.createRow(rowIndex);
         int len = cellList.size();//当前行 有多少列
         for (int i = 0; i < len; i++) {//i是headers的索引，n是Excel的索引 多级表头
@@ -476,7 +1046,7 @@ public class XSSExcelTool<T> {
             if (endC > c) {
                 endC--;
             }
-            XSSFCell cell = row.getCell(c);
+            Cell cell = row.getCell(c);
             XSSFRichTextString text = new XSSFRichTextString(tpamscolumn.getContent());
             cell.setCellStyle(this.styleHead); //设置表头样式
             cell.setCellValue(text);
@@ -534,10 +1104,7 @@ public class XSSExcelTool<T> {
                 i++;
             }
         }
-        setParm(lc, "0");//处理一下
-        List<Column> s = TreeTool.buildByRecursive(lc, "0");
-        setColNum(lc, s, s);
-        return s;
+        return CompiledHeader.compile(lc, "0").getColumns();
     }
 
     /**
@@ -554,6 +1121,38 @@ public class XSSExcelTool<T> {
      * @throws Exception
      */
     public List<Column> columnTransformer(List<T> list, String id, String pid, String content, String fieldName, String rootid) throws Exception {
+        return compileHeader(list, id, pid, content, fieldName, rootid).getColumns();
+    }
+
+    /**
+     * 编译表头 同样的表头定义直接使用缓存的布局，适合同一个报表反复导出
+     * 参数和columnTransformer一致，getColumns()的结果可以直接传给exportExcel
+     *
+     * @param list      需要转换的数据
+     * @param id        当前节点id 字段的名称  主键
+     * @param pid       父节点id 字段的名称
+     * @param content   填写表头单元格内容的 字段名称
+     * @param fieldName 填写行内数据对的 字段名称
+     * @param rootid    rootid的值
+     * @return
+     * @throws Exception
+     */
+    public CompiledHeader compileHeader(List<T> list, String id, String pid, String content, String fieldName, String rootid) throws Exception {
+        return CompiledHeader.compile(toColumnList(list, id, pid, content, fieldName), rootid);
+    }
+
+    /**
+     * 把表头数据转换成一条一条的column对象
+     *
+     * @param list      需要转换的数据
+     * @param id        当前节点id 字段的名称  主键
+     * @param pid       父节点id 字段的名称
+     * @param content   填写表头单元格内容的 字段名称
+     * @param fieldName 填写行内数据对的 字段名称
+     * @return
+     * @throws Exception
+     */
+    private List<Column> toColumnList(List<T> list, String id, String pid, String content, String fieldName) throws Exception {
         List<Column> lc = new ArrayList<>();
         if (list.get(0) instanceof Map) {
             for (Map m : (List<Map>) list) {
@@ -600,10 +1199,7 @@ public class XSSExcelTool<T> {
                 lc.add(tpamscolumn);
             }
         }
-        setParm(lc, rootid);//处理一下
-        List<Column> s = TreeTool.buildByRecursive(lc, rootid);
-        setColNum(lc, s, s);
-        return s;
+        return lc;
     }
 
     /**
@@ -612,35 +1208,7 @@ public class XSSExcelTool<T> {
      * @param list
      */
     public static void setParm(List<Column> list, String rootid) {
-        int row = 0;//excel第几行
-        int rLen = 0; //excel 跨多少行
-        int totalRow = TreeTool.getMaxStep(list);
-        int totalCol = TreeTool.getDownChildren(list, rootid);
-        for (int i = 0; i < list.size(); i++) {
-            Column poit = list.get(i);
-            int tree_step = TreeTool.getTreeStep(list, poit.getPid(), 0);//往上遍历tree
-            poit.setTreeStep(tree_step);
-            poit.setRow(tree_step);//设置第几行
-            //判断是否有节点
-            boolean hasCh = TreeTool.hasChild(list, poit);
-            poit.setHasChildren(hasCh);
-            if (hasCh) {
-                poit.setRLen(0);//设置跨多少行
-            } else {
-                if (tree_step < totalRow) {
-                    rLen = totalRow - tree_step;
-                }
-                poit.setRLen(rLen);
-            }
-//            boolean flag=false;//控制只有root 节点才有总的行数信息
-//            if(rootid == null && rootid == poit.getId() )flag = true;
-//            if(rootid != null && rootid.equals(poit.getId()))flag = true;
-//            if(flag){
-//
-//            }
-            poit.setTotalRow(totalRow);
-            poit.setTotalCol(totalCol);
-        }
+        new HeaderLayout(list).setParm(rootid);
     }
 
     /**
@@ -650,28 +1218,7 @@ public class XSSExcelTool<T> {
      * @param treeList 转成tree结构的list
      */
     public static void setColNum(List<Column> list, List<Column> treeList, List<Column> flist) {
-//        int col = pcIndex;//excel第几列
-//        int cLen ;//xcel跨多少列
-        List<Column> new_list = new ArrayList<>();//新的遍历list
-        for (int i = 0; i < treeList.size(); i++) {
-            Column poit = treeList.get(i);
-//            String temp_id = TreeTool.getStepFid(list,poit.getId() ,1);
-            int col = TreeTool.getFCol(list, poit.getPid()).getCol();
-            int brotherCol = TreeTool.getBrotherChilNum(list, poit);
-            poit.setCol(col + brotherCol);
-            int cLen = TreeTool.getDownChildren(list, poit.getId());
-            if (cLen <= 1) {
-                cLen = 0;
-            }
-//            else  cLen--;
-            poit.setCLen(cLen);//设置跨多少列
-            if (poit.getCellList().size() > 0) {
-                new_list.addAll(poit.getCellList());
-            }
-        }
-        if (new_list.size() > 0) {
-            setColNum(list, new_list, flist);
-        }
+        new HeaderLayout(list).setColNum(treeList);
     }
 //========上部分是导出excel的使用（生成excel），下部分是解析excel，由于excel导入==================================================================================================================================
 
@@ -690,9 +1237,7 @@ public class XSSExcelTool<T> {
                 case FORMULA: {
                     // 判断当前的cell是否为Date
                     if (DateUtil.isCellDateFormatted(cell)) {
-                        Date date = cell.getDateCellValue();
-                        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                        cellvalue = sdf.format(date);
+                        cellvalue = IMPORT_DATE_FORMATS.format(cell.getLocalDateTimeCellValue());
                     } else { // 如果是纯数字
                         cellvalue = String.valueOf(cell.getNumericCellValue());
                     }
@@ -766,66 +1311,37 @@ public class XSSExcelTool<T> {
     }
 
     /**
-     * 判断指定的单元格是否是合并单元格
-     *
-     * @param sheet
-     * @param row    行下标
-     * @param column 列下标
-     * @return
-     */
-    private boolean isMergedRegion(Sheet sheet, int row, int column) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress range = sheet.getMergedRegion(i);
-            int firstColumn = range.getFirstColumn();
-            int lastColumn = range.getLastColumn();
-            int firstRow = range.getFirstRow();
-            int lastRow = range.getLastRow();
-            if (row >= firstRow && row <= lastRow) {
-                if (column >= firstColumn && column <= lastColumn) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
-    /**
-     * 获取合并单元格的值
+     * 获取合并单元格的值 左上角单元格的值读取一次后缓存
      *
      * @param sheet
-     * @param row    行下标
-     * @param column 列下标
+     * @param merged 工作表的合并单元格索引
+     * @param region 合并范围的下标
      * @return
      */
-    private String getMergedRegionValue(Sheet sheet, int row, int column) {
-        int sheetMergeCount = sheet.getNumMergedRegions();
-
-        for (int i = 0; i < sheetMergeCount; i++) {
-            CellRangeAddress ca = sheet.getMergedRegion(i);
-            int firstColumn = ca.getFirstColumn();
-            int lastColumn = ca.getLastColumn();
-            int firstRow = ca.getFirstRow();
-            int lastRow = ca.getLastRow();
-            if (row >= firstRow && row <= lastRow) {
-                if (column >= firstColumn && column <= lastColumn) {
-                    Row fRow = sheet.getRow(firstRow);
-                    Cell fCell = fRow.getCell(firstColumn);
-                    return getStringCellValue(fCell);
-                }
-            }
+    private String getMergedRegionValue(Sheet sheet, MergedRegionIndex merged, int region) {
+        String value = merged.getValue(region);
+        if (value == null) {
+            Row fRow = sheet.getRow(merged.getFirstRow(region));
+            value = fRow == null ? "" : getStringCellValue(fRow.getCell(merged.getFirstColumn(region)));
+            merged.setValue(region, value);
         }
-        return "";
+        return value;
     }
 
     /**
      * 获取excel的值 返回的 List<List<String>>的数据结构
+     * xlsx和xls文件使用ExcelStreamReader逐行解析，不加载整个workbook，结果相同
      *
      * @param fileUrl  文件路径
      * @param sheetNum 工作表（第几分页[1,2,3.....]）
      * @return List<List < String>>
      */
     public List<List<String>> getExcelValues(String fileUrl, int sheetNum) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getValues(sheetNum);
+            }
+        }
         List<List<String>> values = new ArrayList<List<String>>();
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
@@ -834,6 +1350,7 @@ public class XSSExcelTool<T> {
         //int sheetCount1= workbook.getNumberOfSheets();
         Sheet sheet = workbook.getSheetAt(sheetCount); //读取第几个工作表sheet
         int rowNum = sheet.getLastRowNum();//有多少行
+        MergedRegionIndex merged = MergedRegionIndex.of(sheet);//合并单元格的索引，每个工作表建一次
         for (int i = 1; i <= rowNum; i++) {
             Row row = sheet.getRow(i);//第i行
             if (row == null) {//过滤空行
@@ -844,13 +1361,10 @@ public class XSSExcelTool<T> {
             for (int j = 0; j < colCount; j++) {//第j列://+1是因为最后一列是空 也算进去
                 Cell cell = row.getCell(j);
                 String cellValue;
-                boolean isMerge = false;
-                if (cell != null) {
-                    isMerge = isMergedRegion(sheet, i, cell.getColumnIndex());
-                }
+                int region = cell == null ? -1 : merged.find(i, cell.getColumnIndex());
                 //判断是否具有合并单元格
-                if (isMerge) {
-                    cellValue = getMergedRegionValue(sheet, row.getRowNum(), cell.getColumnIndex());
+                if (region >= 0) {
+                    cellValue = getMergedRegionValue(sheet, merged, region);
                 } else {
                     cellValue = getStringCellValue(cell);
                 }
@@ -883,12 +1397,18 @@ public class XSSExcelTool<T> {
 
     /**
      * 根据sheet数获取excel的值 返回List<List<Map<String,String>>>的数据结构
+     * xlsx和xls文件使用ExcelStreamReader逐行解析，不加载整个workbook，结果相同
      *
      * @param fileUrl  文件路径
      * @param sheetNum 工作表（第几分页[1,2,3.....]）
      * @return List<List < Map < String, String>>>
      */
     public List<List<Map<String, String>>> getExcelMapVal(String fileUrl, int sheetNum) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getMapValues(sheetNum);
+            }
+        }
         List<List<Map<String, String>>> values = new ArrayList<List<Map<String, String>>>();
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
@@ -897,6 +1417,7 @@ public class XSSExcelTool<T> {
         //int sheetCount1= workbook.getNumberOfSheets();
         Sheet sheet = workbook.getSheetAt(sheetCount); //读取第几个工作表sheet
         int rowNum = sheet.getLastRowNum();//有多少行
+        MergedRegionIndex merged = MergedRegionIndex.of(sheet);//合并单元格的索引，每个工作表建一次
         Row rowTitle = sheet.getRow(0);//第i行
         int colCount = sheet.getRow(0).getLastCellNum();//用表头去算有多少列，不然从下面的行计算列的话，空的就不算了
         for (int i = 1; i <= rowNum; i++) {
@@ -911,13 +1432,10 @@ public class XSSExcelTool<T> {
                 Cell cellTitle = rowTitle.getCell(j);
                 String cellValue;
                 String cellKey = getStringCellValue(cellTitle);
-                boolean isMerge = false;
-                if (cell != null) {
-                    isMerge = isMergedRegion(sheet, i, cell.getColumnIndex());
-                }
+                int region = cell == null ? -1 : merged.find(i, cell.getColumnIndex());
                 //判断是否具有合并单元格
-                if (isMerge) {
-                    cellValue = getMergedRegionValue(sheet, row.getRowNum(), cell.getColumnIndex());
+                if (region >= 0) {
+                    cellValue = getMergedRegionValue(sheet, merged, region);
                 } else {
                     cellValue = getStringCellValue(cell);
                 }
@@ -929,6 +1447,53 @@ public class XSSExcelTool<T> {
         return values;
     }
 
+    /**
+     * 根据sheet数获取excel的值 返回List<ImportRow>的数据结构
+     * 读取的行和getExcelMapVal相同(跳过空行)，每一行只保存值的数组，所有行共用一个 表头 -> 列 的字典，
+     * 按表头取值用row.get(表头)或row.asMap()，需要getExcelMapVal的结构时用row.toCellMaps()
+     *
+     * @param fileUrl  文件路径
+     * @param sheetNum 工作表（第几分页[1,2,3.....]）
+     * @return List<ImportRow>
+     */
+    public List<ImportRow> getExcelRows(String fileUrl, int sheetNum) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            return reader.getImportRows(sheetNum);
+        }
+    }
+
+    /**
+     * 分批读取excel 每读够batchSize行调用一次handler.onRowBatch，内存中只有一批行，适合分批写入数据库
+     * 读取的行和getExcelRows相同
+     *
+     * @param fileUrl   文件路径
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readExcelRows(String fileUrl, int sheetNum, int batchSize, ImportRowHandler handler) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            reader.readBatches(sheetNum, batchSize, handler);
+        }
+    }
+
+    /**
+     * 分批读取excel handler.onRowBatch在线程池中调用，处理上一批的同时读取下一批，批次按顺序依次处理
+     *
+     * @param fileUrl   文件路径
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param batchSize 批次大小
+     * @param handler   回调
+     * @param executor  处理批次的线程池
+     * @throws Exception 读取失败或回调抛出的异常
+     */
+    public void readExcelRows(String fileUrl, int sheetNum, int batchSize, ImportRowHandler handler, ExecutorService executor) throws Exception {
+        try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+            reader.readBatches(sheetNum, batchSize, handler, executor);
+        }
+    }
+
     /**
      * 获取当前excel的工作表sheet总数
      *
@@ -937,6 +1502,11 @@ public class XSSExcelTool<T> {
      * @throws Exception
      */
     public int hasSheetCount(String fileUrl) throws Exception {
+        if (ExcelStreamReader.isSupported(fileUrl)) {
+            try (ExcelStreamReader reader = ExcelStreamReader.open(fileUrl)) {
+                return reader.getSheetCount();
+            }
+        }
         File file = new File(fileUrl);
         InputStream is = new FileInputStream(file);
         Workbook workbook = WorkbookFactory.create(is);
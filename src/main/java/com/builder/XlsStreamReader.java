@@ -0,0 +1,306 @@
+package com.builder;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MergeCellsRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * xls流式读取 使用HSSF的事件模型，逐条处理Workbook流中的记录，不创建HSSFWorkbook的对象模型
+ * 共享字符串表(SST)在工作簿的全局记录中，读到后保存；数字记录(RK、MulRK)由POI转换成NumberRecord
+ * 合并单元格记录(MergeCells)在单元格记录后面，先扫描一遍取得合并的范围，读到目标工作表结束就停止
+ * 单元格的值和getStringCellValue一致，数字不按单元格格式格式化(日期同样为序列号)
+ * 除了共享字符串表，内存只和一行的列数有关，和文件大小无关
+ * 一个文件使用一个，不是线程安全的
+ */
+public class XlsStreamReader extends ExcelStreamReader {
+
+    private final POIFSFileSystem fs;
+    /**
+     * Workbook流的名称 Workbook或WORKBOOK
+     */
+    private final String workbookName;
+
+    private XlsStreamReader(POIFSFileSystem fs) throws IOException {
+        this.fs = fs;
+        try {
+            this.workbookName = HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot());
+        } catch (RuntimeException e) {
+            fs.close();
+            throw new IOException("不是有效的xls文件", e);
+        }
+    }
+
+    /**
+     * 只读打开文件 记录按需读取，不会全部读入内存
+     *
+     * @param fileUrl 文件路径
+     * @return
+     * @throws IOException
+     */
+    public static XlsStreamReader open(String fileUrl) throws IOException {
+        return new XlsStreamReader(new POIFSFileSystem(new File(fileUrl), true));
+    }
+
+    /**
+     * 从输入流打开 文件内容会读入内存(记录仍然逐条处理)，输入流由调用方关闭
+     *
+     * @param in 输入流
+     * @return
+     * @throws IOException
+     */
+    public static XlsStreamReader open(InputStream in) throws IOException {
+        return new XlsStreamReader(new POIFSFileSystem(in));
+    }
+
+    /**
+     * 工作表总数 只读取工作簿的全局记录
+     *
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public int getSheetCount() throws IOException {
+        RecordListener listener = new RecordListener(0);
+        process(listener);
+        return listener.sheets.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        fs.close();
+    }
+
+    /**
+     * 读取一个工作表 先扫描一遍取得合并的范围
+     *
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param assembler 按表头组装每一行
+     * @throws IOException
+     */
+    @Override
+    void read(int sheetNum, SheetRowAssembler assembler) throws IOException {
+        MergeListener scan = new MergeListener(sheetNum);
+        process(scan);
+        if (!scan.found) {
+            throw new IllegalArgumentException("工作表不存在:" + sheetNum);
+        }
+        assembler.setMerges(scan.merges);
+        process(new CellListener(sheetNum, assembler));
+    }
+
+    private void process(RecordListener listener) throws IOException {
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener);
+        try (InputStream in = fs.createDocumentInputStream(workbookName)) {
+            new HSSFEventFactory().abortableProcessEvents(request, in);
+        } catch (Exception e) {
+            throw e instanceof IOException ? (IOException) e : new IOException("读取xls失败", e);
+        }
+    }
+
+    /**
+     * 按BOF/EOF记录跟踪当前所在的工作表 目标工作表中的记录交给sheetRecord，目标工作表结束后停止
+     * 工作表在流中的顺序按BoundSheet记录中的位置排序，工作表序号按BoundSheet记录的顺序
+     * 工作表中嵌入的图表有自己的BOF/EOF，其中的记录忽略
+     */
+    private static class RecordListener extends AbortableHSSFListener {
+
+        /**
+         * 目标工作表，0为只读取全局记录
+         */
+        private final int sheetNum;
+        final List<BoundSheetRecord> sheets = new ArrayList<>();
+        /**
+         * 按在流中的位置排序的工作表
+         */
+        private BoundSheetRecord[] ordered;
+        private SSTRecord sst;
+        private int depth;
+        private int sheetOrdinal = -1;
+        boolean found;
+
+        RecordListener(int sheetNum) {
+            this.sheetNum = sheetNum;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) {
+            if (record instanceof BOFRecord) {
+                depth++;
+                if (depth == 1 && ((BOFRecord) record).getType() != BOFRecord.TYPE_WORKBOOK) {
+                    sheetOrdinal++;
+                    found = ordered != null && sheetOrdinal < ordered.length
+                            && sheets.indexOf(ordered[sheetOrdinal]) + 1 == sheetNum;
+                }
+                return 0;
+            }
+            if (record instanceof EOFRecord) {
+                depth--;
+                if (depth == 0 && ordered == null) {
+                    ordered = BoundSheetRecord.orderByBofPosition(sheets);
+                    return (short) (sheetNum <= 0 ? 1 : 0);
+                }
+                if (depth == 0 && found) {
+                    sheetEnd();
+                    return 1;
+                }
+                return 0;
+            }
+            if (ordered == null) {
+                if (record instanceof BoundSheetRecord) {
+                    sheets.add((BoundSheetRecord) record);
+                } else if (record instanceof SSTRecord) {
+                    sst = (SSTRecord) record;
+                }
+            } else if (found && depth == 1) {
+                sheetRecord(record);
+            }
+            return 0;
+        }
+
+        String getString(int index) {
+            return sst.getString(index).getString();
+        }
+
+        void sheetRecord(Record record) {
+        }
+
+        void sheetEnd() {
+        }
+    }
+
+    /**
+     * 收集目标工作表的合并单元格
+     */
+    private static final class MergeListener extends RecordListener {
+
+        /**
+         * 合并单元格 每个元素为{firstRow,lastRow,firstCol,lastCol}
+         */
+        private final List<int[]> merges = new ArrayList<>();
+
+        MergeListener(int sheetNum) {
+            super(sheetNum);
+        }
+
+        @Override
+        void sheetRecord(Record record) {
+            if (record instanceof MergeCellsRecord) {
+                MergeCellsRecord mergeCells = (MergeCellsRecord) record;
+                for (int i = 0; i < mergeCells.getNumAreas(); i++) {
+                    CellRangeAddress area = mergeCells.getAreaAt(i);
+                    merges.add(new int[]{area.getFirstRow(), area.getLastRow(), area.getFirstColumn(), area.getLastColumn()});
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取目标工作表的单元格
+     * 行记录(Row)按块写在单元格之前，只有行记录没有单元格的行在下一个单元格所在的行之前补上
+     */
+    private static final class CellListener extends RecordListener {
+
+        private final SheetRowAssembler assembler;
+        /**
+         * 还没有处理的行记录
+         */
+        private final ArrayDeque<Integer> pendingRows = new ArrayDeque<>();
+        private int rowIndex = -1;
+
+        CellListener(int sheetNum, SheetRowAssembler assembler) {
+            super(sheetNum);
+            this.assembler = assembler;
+        }
+
+        @Override
+        void sheetRecord(Record record) {
+            if (record instanceof RowRecord) {
+                pendingRows.add(((RowRecord) record).getRowNumber());
+            } else if (record instanceof LabelSSTRecord) {
+                LabelSSTRecord label = (LabelSSTRecord) record;
+                cell(label.getRow(), label.getColumn(), getString(label.getSSTIndex()).trim(), false);
+            } else if (record instanceof NumberRecord) {
+                NumberRecord number = (NumberRecord) record;
+                cell(number.getRow(), number.getColumn(), String.valueOf(number.getValue()), false);
+            } else if (record instanceof BoolErrRecord) {
+                BoolErrRecord boolErr = (BoolErrRecord) record;
+                cell(boolErr.getRow(), boolErr.getColumn(), boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()) : "", false);
+            } else if (record instanceof FormulaRecord) {
+                FormulaRecord formula = (FormulaRecord) record;
+                cell(formula.getRow(), formula.getColumn(), "", false);
+            } else if (record instanceof LabelRecord) {
+                LabelRecord label = (LabelRecord) record;
+                cell(label.getRow(), label.getColumn(), label.getValue().trim(), false);
+            } else if (record instanceof BlankRecord) {
+                BlankRecord blank = (BlankRecord) record;
+                cell(blank.getRow(), blank.getColumn(), "", true);
+            } else if (record instanceof MulBlankRecord) {
+                MulBlankRecord blanks = (MulBlankRecord) record;
+                for (int i = 0; i < blanks.getNumColumns(); i++) {
+                    cell(blanks.getRow(), blanks.getFirstColumn() + i, "", true);
+                }
+            }
+        }
+
+        @Override
+        void sheetEnd() {
+            if (rowIndex >= 0) {
+                assembler.endRow();
+            }
+            flushRows(Integer.MAX_VALUE);
+        }
+
+        private void cell(int row, int col, String value, boolean blank) {
+            if (row != rowIndex) {
+                if (rowIndex >= 0) {
+                    assembler.endRow();
+                }
+                flushRows(row);
+                rowIndex = row;
+                assembler.startRow(row);
+            }
+            assembler.cell(col, value, blank);
+        }
+
+        /**
+         * 补上before之前只有行记录的行
+         *
+         * @param before 下一个有单元格的行
+         */
+        private void flushRows(int before) {
+            while (!pendingRows.isEmpty() && pendingRows.peek() <= before) {
+                int row = pendingRows.poll();
+                if (row > rowIndex && row < before) {
+                    assembler.startRow(row);
+                    assembler.endRow();
+                    rowIndex = row;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.builder;
+
+import com.entity.Column;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 不经过POI对象模型直接生成xlsx的导出后端 写入XlsxStreamWriter
+ * 列宽在sheetData之前写入，数据写完后已经不能修改，估算的列宽不会生效
+ * 一次导出使用一个，不是线程安全的
+ */
+public class XlsxExportBackend implements ExportBackend {
+
+    private final XlsxStreamWriter writer;
+
+    /**
+     * @param writer 直接生成xlsx的写入工具，finish时结束(不关闭输出流)
+     */
+    public XlsxExportBackend(XlsxStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public int getMaxRows() {
+        return SheetSplitPolicy.XLSX_MAX_ROWS;
+    }
+
+    @Override
+    public SheetWriter newSheet(String sheetName, List<Column> headerCellList) throws IOException {
+        XlsxSheetWriter sheet = writer.newSheet(sheetName);
+        sheet.writeHead(headerCellList);
+        return new XlsxSheet(sheet, writer);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.finish();
+    }
+
+    /**
+     * 把单独写入的工作表(例如多线程生成的临时文件)包装成SheetWriter，finish时结束工作表
+     *
+     * @param sheet 已经写好表头的工作表
+     * @return
+     */
+    public static SheetWriter wrap(XlsxSheetWriter sheet) {
+        return new XlsxSheet(sheet, null);
+    }
+
+    private static class XlsxSheet implements SheetWriter {
+
+        private final XlsxSheetWriter sheet;
+        /**
+         * 工作表所在的xlsx，为null时工作表单独写入
+         */
+        private final XlsxStreamWriter writer;
+
+        private XlsxSheet(XlsxSheetWriter sheet, XlsxStreamWriter writer) {
+            this.sheet = sheet;
+            this.writer = writer;
+        }
+
+        @Override
+        public void startRow(int rowIndex) throws IOException {
+            sheet.startRow(rowIndex);
+        }
+
+        @Override
+        public void writeCell(int col, Object value) throws IOException {
+            sheet.writeCell(col, value);
+        }
+
+        @Override
+        public void endRow() throws IOException {
+            sheet.endRow();
+        }
+
+        @Override
+        public void finish(ColumnWidthEstimator.Widths widths) throws IOException {
+            if (writer != null) {
+                writer.closeSheet();
+            } else {
+                sheet.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.builder;
+
+import com.entity.Column;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 直接生成xlsx中一个工作表(xl/worksheets/sheetN.xml)的xml，不经过POI的对象模型
+ * 表头按Column的坐标(row,col,rLen,cLen)生成并合并单元格，字符串使用inlineStr写入；
+ * 所有内容先写进一个可重复使用的char缓冲区，转义xml时不创建新的字符串
+ * 样式只使用XlsxStreamWriter的styles.xml里面固定的几个
+ * 多线程导出时每个线程用rows创建只有数据行的片段，再按顺序用appendRows拼接到工作表中
+ * 一个工作表使用一个，不是线程安全的
+ */
+public class XlsxSheetWriter {
+
+    /**
+     * 表头样式
+     */
+    public static final int STYLE_HEAD = 1;
+    /**
+     * 主体样式
+     */
+    public static final int STYLE_BODY = 2;
+    /**
+     * 主体日期样式
+     */
+    public static final int STYLE_DATE = 3;
+
+    /**
+     * excel数值的有效位数，超过的数字按文本写入，避免丢失精度
+     */
+    private static final int MAX_NUMERIC_PRECISION = 15;
+
+    /**
+     * 列号对应的字母 A,B...AA 按需生成后缓存
+     */
+    private static volatile char[][] columnNames = new char[0][];
+
+    private final Writer out;
+    /**
+     * out下面的字节流，拼接片段时直接复制
+     */
+    private final OutputStream stream;
+    /**
+     * 是否是只有数据行的片段(没有xml声明、表头和结尾)
+     */
+    private final boolean fragment;
+    private final char[] buffer = new char[16 * 1024];
+    private int pos;
+    /**
+     * 是否按数据类型写入
+     */
+    private final boolean typed;
+    /**
+     * 合并单元格 每个元素为{firstRow,lastRow,firstCol,lastCol}
+     */
+    private final List<int[]> merges = new ArrayList<>();
+    /**
+     * 当前行(从0开始)
+     */
+    private int rowIndex = -1;
+    /**
+     * 当前行写入的数字(从1开始)，写单元格坐标时使用
+     */
+    private int rowNumber;
+
+    /**
+     * @param out       输出流,写完不会关闭
+     * @param colWidth  单元格宽度
+     * @param rowHeight 单元格行高度
+     * @param typed     是否按数据类型写入,false时全部按文本写入
+     * @throws IOException
+     */
+    public XlsxSheetWriter(OutputStream out, int colWidth, int rowHeight, boolean typed) throws IOException {
+        this(out, typed, false);
+        append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        append("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+        append("<sheetFormatPr baseColWidth=\"");
+        appendInt(colWidth);
+        append("\" defaultRowHeight=\"");
+        appendInt(rowHeight);
+        append("\" customHeight=\"1\"/><sheetData>");
+    }
+
+    private XlsxSheetWriter(OutputStream out, boolean typed, boolean fragment) {
+        this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        this.stream = out;
+        this.typed = typed;
+        this.fragment = fragment;
+    }
+
+    /**
+     * 只写数据行的片段 没有xml声明、表头和结尾，finish时只刷新到输出流，用appendRows拼接到工作表中
+     *
+     * @param out   输出流,写完不会关闭
+     * @param typed 是否按数据类型写入,false时全部按文本写入
+     * @return
+     */
+    public static XlsxSheetWriter rows(OutputStream out, boolean typed) {
+        return new XlsxSheetWriter(out, typed, true);
+    }
+
+    /**
+     * 写入表头 支持单级，多级表头，返回表头下面的第一行
+     *
+     * @param headerCellList 表头数据(tree结构)
+     * @return
+     * @throws IOException
+     */
+    public int writeHead(List<Column> headerCellList) throws IOException {
+        int totalRow = headerCellList.get(0).getTotalRow();
+        int totalCol = headerCellList.get(0).getTotalCol();
+        String[][] grid = new String[totalRow][totalCol];
+        fillHead(headerCellList, grid);
+        for (int r = 0; r < totalRow; r++) {
+            startRow(r);
+            for (int c = 0; c < totalCol; c++) {
+                writeString(c, grid[r][c], STYLE_HEAD);
+            }
+            endRow();
+        }
+        return totalRow;
+    }
+
+    /**
+     * 把表头内容放到对应的坐标上,并记录需要合并的单元格
+     *
+     * @param cellList 表头数据
+     * @param grid     表头的表格
+     */
+    private void fillHead(List<Column> cellList, String[][] grid) {
+        for (Column column : cellList) {
+            int r = column.getRow();
+            int c = column.getCol();
+            int endR = r + column.getRLen();
+            if (endR > r) {
+                endR--;
+            }
+            int endC = c + column.getCLen();
+            if (endC > c) {
+                endC--;
+            }
+            if (r < grid.length && c < grid[r].length) {
+                grid[r][c] = column.getContent();
+            }
+            if (endR > r || endC > c) {
+                merges.add(new int[]{r, endR, c, endC});
+            }
+            if (column.isHasChildren()) {
+                fillHead(column.getCellList(), grid);
+            }
+        }
+    }
+
+    /**
+     * 开始写入一行,行号必须递增
+     *
+     * @param rowIndex 第几行(从0开始)
+     * @throws IOException
+     */
+    public void startRow(int rowIndex) throws IOException {
+        if (rowIndex <= this.rowIndex) {
+            throw new IllegalStateException("行号必须递增:" + rowIndex);
+        }
+        this.rowIndex = rowIndex;
+        this.rowNumber = rowIndex + 1;
+        append("<row r=\"");
+        appendInt(rowNumber);
+        append("\">");
+    }
+
+    /**
+     * 结束当前行
+     *
+     * @throws IOException
+     */
+    public void endRow() throws IOException {
+        append("</row>");
+    }
+
+    /**
+     * 写入主体单元格,列号必须递增
+     *
+     * @param col   第几列(从0开始)
+     * @param value 值,为null时只写样式
+     * @throws IOException
+     */
+    public void writeCell(int col, Object value) throws IOException {
+        if (value == null) {
+            writeBlank(col, STYLE_BODY);
+        } else if (value instanceof String) {
+            writeString(col, (String) value, STYLE_BODY);
+        } else if (typed && value instanceof Number && isExactNumber((Number) value)) {
+            writeNumber(col, (Number) value);
+        } else if (typed && value instanceof Boolean) {
+            startCell(col, STYLE_BODY);
+            append(" t=\"b\"><v>");
+            append((Boolean) value ? '1' : '0');
+            append("</v></c>");
+        } else if (typed && isDate(value)) {
+            startCell(col, STYLE_DATE);
+            append("><v>");
+            append(Double.toString(getExcelDate(value)));
+            append("</v></c>");
+        } else {
+            writeString(col, value.toString(), STYLE_BODY);
+        }
+    }
+
+    /**
+     * 写入字符串单元格(inlineStr)
+     *
+     * @param col   第几列
+     * @param text  内容
+     * @param style 样式
+     * @throws IOException
+     */
+    public void writeString(int col, String text, int style) throws IOException {
+        if (text == null || text.isEmpty()) {
+            writeBlank(col, style);
+            return;
+        }
+        startCell(col, style);
+        append(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+        appendEscaped(text);
+        append("</t></is></c>");
+    }
+
+    /**
+     * 写入只有样式的空单元格
+     *
+     * @param col   第几列
+     * @param style 样式
+     * @throws IOException
+     */
+    public void writeBlank(int col, int style) throws IOException {
+        startCell(col, style);
+        append("/>");
+    }
+
+    private void writeNumber(int col, Number number) throws IOException {
+        startCell(col, STYLE_BODY);
+        append("><v>");
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            appendLong(number.longValue());
+        } else {
+            double d = number.doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                appendLong((long) d);
+            } else {
+                append(Double.toString(d));
+            }
+        }
+        append("</v></c>");
+    }
+
+    /**
+     * 数字能否用excel的数值准确表示
+     *
+     * @param number
+     * @return
+     */
+    private boolean isExactNumber(Number number) {
+        double d = number.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return false;
+        }
+        if (number instanceof BigDecimal && ((BigDecimal) number).precision() > MAX_NUMERIC_PRECISION) {
+            return false;
+        }
+        return !((number instanceof Long || number instanceof BigInteger) && Math.abs(d) >= 1e15);
+    }
+
+    private boolean isDate(Object value) {
+        return value instanceof Date || value instanceof LocalDateTime || value instanceof LocalDate
+                || value instanceof Calendar || value instanceof Instant || value instanceof ZonedDateTime
+                || value instanceof OffsetDateTime;
+    }
+
+    private double getExcelDate(Object value) {
+        if (value instanceof Date) {
+            return DateUtil.getExcelDate((Date) value);
+        } else if (value instanceof LocalDateTime) {
+            return DateUtil.getExcelDate((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            return DateUtil.getExcelDate((LocalDate) value);
+        } else if (value instanceof Calendar) {
+            return DateUtil.getExcelDate((Calendar) value, false);
+        } else if (value instanceof ZonedDateTime) {
+            return DateUtil.getExcelDate(((ZonedDateTime) value).toLocalDateTime());
+        } else if (value instanceof OffsetDateTime) {
+            return DateUtil.getExcelDate(((OffsetDateTime) value).toLocalDateTime());
+        }
+        return DateUtil.getExcelDate(Date.from((Instant) value));
+    }
+
+    /**
+     * 写入单元格的开头 <c r="A1" s="1"
+     *
+     * @param col   第几列
+     * @param style 样式
+     * @throws IOException
+     */
+    private void startCell(int col, int style) throws IOException {
+        append("<c r=\"");
+        append(getColumnName(col));
+        appendInt(rowNumber);
+        append("\" s=\"");
+        appendInt(style);
+        append('"');
+    }
+
+    /**
+     * 拼接rows写好的片段 片段中的行号必须在已经写入的行之后，拼接后不能再用startRow写入
+     *
+     * @param rowsPart 片段文件
+     * @throws IOException
+     */
+    public void appendRows(File rowsPart) throws IOException {
+        flushBuffer();
+        out.flush();
+        Files.copy(rowsPart.toPath(), stream);
+        rowIndex = Integer.MAX_VALUE;
+    }
+
+    /**
+     * 结束工作表,写入合并单元格并刷新到输出流(不会关闭输出流)；片段只刷新到输出流
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (fragment) {
+            flushBuffer();
+            out.flush();
+            return;
+        }
+        append("</sheetData>");
+        if (!merges.isEmpty()) {
+            append("<mergeCells count=\"");
+            appendInt(merges.size());
+            append("\">");
+            for (int[] m : merges) {
+                append("<mergeCell ref=\"");
+                append(getColumnName(m[2]));
+                appendInt(m[0] + 1);
+                append(':');
+                append(getColumnName(m[3]));
+                appendInt(m[1] + 1);
+                append("\"/>");
+            }
+            append("</mergeCells>");
+        }
+        append("</worksheet>");
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * 获取列号对应的字母
+     *
+     * @param col 第几列(从0开始)
+     * @return
+     */
+    static char[] getColumnName(int col) {
+        char[][] names = columnNames;
+        if (col < names.length) {
+            return names[col];
+        }
+        synchronized (XlsxSheetWriter.class) {
+            names = columnNames;
+            if (col < names.length) {
+                return names[col];
+            }
+            char[][] grown = new char[Math.max(col + 1, names.length * 2)][];
+            System.arraycopy(names, 0, grown, 0, names.length);
+            for (int i = names.length; i < grown.length; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int n = i + 1; n > 0; n = (n - 1) / 26) {
+                    sb.insert(0, (char) ('A' + (n - 1) % 26));
+                }
+                grown[i] = sb.toString().toCharArray();
+            }
+            columnNames = grown;
+            return grown[col];
+        }
+    }
+
+    // ==================== 缓冲区 ====================
+
+    private void append(char c) throws IOException {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = c;
+    }
+
+    private void append(char[] chars) throws IOException {
+        if (pos + chars.length > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(chars, 0, buffer, pos, chars.length);
+        pos += chars.length;
+    }
+
+    private void append(String s) throws IOException {
+        int len = s.length();
+        if (pos + len > buffer.length) {
+            flushBuffer();
+            if (len > buffer.length) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, len, buffer, pos);
+        pos += len;
+    }
+
+    private void appendInt(int i) throws IOException {
+        appendLong(i);
+    }
+
+    private void appendLong(long l) throws IOException {
+        if (pos + 20 > buffer.length) {
+            flushBuffer();
+        }
+        if (l < 0) {
+            if (l == Long.MIN_VALUE) {
+                append(Long.toString(l));
+                return;
+            }
+            buffer[pos++] = '-';
+            l = -l;
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (char) ('0' + l % 10);
+            l /= 10;
+        } while (l > 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+    }
+
+    /**
+     * 转义xml特殊字符后写入,去掉xml不允许的控制字符
+     *
+     * @param s
+     * @throws IOException
+     */
+    private void appendEscaped(String s) throws IOException {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<':
+                    append("&lt;");
+                    break;
+                case '>':
+                    append("&gt;");
+                    break;
+                case '&':
+                    append("&amp;");
+                    break;
+                case '"':
+                    append("&quot;");
+                    break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        if (c >= 0xFFFE) {
+                            break;
+                        }
+                        append(c);
+                    }
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.builder;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * xlsx流式读取 使用XSSF的事件模型，按SAX逐行解析工作表的xml，不创建workbook的对象模型
+ * 合并单元格的范围写在sheetData后面，读取前先按字节扫描一遍工作表(只解压，不按xml解析)，找到mergeCells后只解析这一段取得范围，
+ * 读取时只保存各个范围左上角的值
+ * 除了共享字符串表，内存只和一行的列数有关，和文件大小无关
+ * 一个文件使用一个，不是线程安全的
+ */
+public class XlsxStreamReader extends ExcelStreamReader {
+
+    private static final byte[] MERGE_CELLS = "mergeCells".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * 扫描时记录的元素名称最大长度(包括命名空间前缀)，更长的不可能是mergeCells
+     */
+    private static final int MAX_TAG_NAME = 64;
+    private static final Pattern MERGE_CELL = Pattern.compile(
+            "<(?:[\\w.-]+:)?mergeCell\\s[^>]*?\\bref\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    /**
+     * 共享字符串表 第一次读取工作表时加载
+     */
+    private ReadOnlySharedStringsTable strings;
+
+    private XlsxStreamReader(OPCPackage pkg) throws IOException {
+        this.pkg = pkg;
+        try {
+            this.reader = new XSSFReader(pkg);
+        } catch (Exception e) {
+            pkg.revert();
+            throw new IOException("不是有效的xlsx文件", e);
+        }
+    }
+
+    /**
+     * 只读打开文件 zip中的内容按需解压，不会全部读入内存
+     *
+     * @param fileUrl 文件路径
+     * @return
+     * @throws IOException
+     */
+    public static XlsxStreamReader open(String fileUrl) throws IOException {
+        try {
+            return new XlsxStreamReader(OPCPackage.open(new File(fileUrl), PackageAccess.READ));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("不是有效的xlsx文件:" + fileUrl, e);
+        }
+    }
+
+    /**
+     * 从输入流打开 zip的压缩内容会读入内存(解压后的xml仍然逐行解析)，输入流由调用方关闭
+     *
+     * @param in 输入流
+     * @return
+     * @throws IOException
+     */
+    public static XlsxStreamReader open(InputStream in) throws IOException {
+        try {
+            return new XlsxStreamReader(OPCPackage.open(in));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("不是有效的xlsx文件", e);
+        }
+    }
+
+    /**
+     * 是否是xlsx文件(按文件头判断，和后缀无关)
+     *
+     * @param fileUrl 文件路径
+     * @return
+     * @throws IOException
+     */
+    public static boolean isXlsx(String fileUrl) throws IOException {
+        return FileMagic.valueOf(new File(fileUrl)) == FileMagic.OOXML;
+    }
+
+    /**
+     * 工作表总数 只读取workbook.xml
+     *
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public int getSheetCount() throws IOException {
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int count = 0;
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        pkg.revert();
+    }
+
+    /**
+     * 读取一个工作表 先按字节扫描一遍取得合并的范围，再按xml逐行解析
+     *
+     * @param sheetNum  工作表（第几分页[1,2,3.....]）
+     * @param assembler 按表头组装每一行
+     * @throws IOException
+     */
+    @Override
+    void read(int sheetNum, SheetRowAssembler assembler) throws IOException {
+        PackagePart part = getSheetPart(sheetNum);
+        try {
+            if (strings == null) {
+                strings = new ReadOnlySharedStringsTable(pkg, false);
+            }
+            assembler.setMerges(readMerges(part));
+            parse(part, new SheetHandler(assembler));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("读取工作表失败:" + sheetNum, e);
+        }
+    }
+
+    private PackagePart getSheetPart(int sheetNum) throws IOException {
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            for (int i = 1; sheets.hasNext(); i++) {
+                sheets.next().close();
+                if (i == sheetNum) {
+                    return sheets.getSheetPart();
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        throw new IllegalArgumentException("工作表不存在:" + sheetNum);
+    }
+
+    private static void parse(PackagePart part, DefaultHandler handler) throws Exception {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(handler);
+        try (InputStream in = part.getInputStream()) {
+            parser.parse(new InputSource(in));
+        }
+    }
+
+    /**
+     * 合并单元格的范围 mergeCells在sheetData后面，按字节找到mergeCells开始的元素，只保存和解析后面的一段
+     * xml的文本中<必须转义，所以在sheetData里不会找到mergeCells元素
+     *
+     * @param part 工作表
+     * @return 每个元素为{firstRow,lastRow,firstCol,lastCol}，没有合并单元格时为空
+     * @throws IOException
+     */
+    private static List<int[]> readMerges(PackagePart part) throws IOException {
+        List<int[]> merges = new ArrayList<>();
+        ByteArrayOutputStream tail = null;
+        byte[] name = new byte[MAX_TAG_NAME];
+        //-1为不在元素名称中
+        int nameLength = -1;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = part.getInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (tail != null) {
+                    tail.write(buffer, 0, n);
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (b == '<') {
+                        nameLength = 0;
+                    } else if (nameLength >= 0) {
+                        if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '>' || b == '/') {
+                            if (isMergeCells(name, nameLength)) {
+                                tail = new ByteArrayOutputStream();
+                                tail.write(buffer, i, n - i);
+                                break;
+                            }
+                            nameLength = -1;
+                        } else if (nameLength < MAX_TAG_NAME) {
+                            name[nameLength++] = b;
+                        } else {
+                            nameLength = -1;
+                        }
+                    }
+                }
+            }
+        }
+        if (tail == null) {
+            return merges;
+        }
+        Matcher matcher = MERGE_CELL.matcher(new String(tail.toByteArray(), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            String ref = matcher.group(1);
+            int colon = ref.indexOf(':');
+            if (colon > 0) {
+                String first = ref.substring(0, colon);
+                String last = ref.substring(colon + 1);
+                merges.add(new int[]{rowIndex(first), rowIndex(last), columnIndex(first), columnIndex(last)});
+            }
+        }
+        return merges;
+    }
+
+    /**
+     * 元素名称是否是mergeCells(可以带命名空间前缀)
+     *
+     * @param name   元素名称
+     * @param length 名称长度
+     * @return
+     */
+    private static boolean isMergeCells(byte[] name, int length) {
+        int offset = length - MERGE_CELLS.length;
+        if (offset < 0 || (offset > 0 && name[offset - 1] != ':')) {
+            return false;
+        }
+        for (int i = 0; i < MERGE_CELLS.length; i++) {
+            if (name[offset + i] != MERGE_CELLS[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 列号 A -> 0, AB -> 27，ref中的数字部分忽略
+     *
+     * @param ref 单元格坐标，例如AB12
+     * @return
+     */
+    private static int columnIndex(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            col = col * 26 + (c - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    /**
+     * 行号(从0开始)
+     *
+     * @param ref 单元格坐标，例如AB12
+     * @return
+     */
+    private static int rowIndex(String ref) {
+        int i = 0;
+        while (i < ref.length() && ref.charAt(i) >= 'A' && ref.charAt(i) <= 'Z') {
+            i++;
+        }
+        return Integer.parseInt(ref.substring(i)) - 1;
+    }
+
+    /**
+     * 工作表的SAX解析
+     */
+    private final class SheetHandler extends DefaultHandler {
+
+        private final SheetRowAssembler assembler;
+        private final StringBuilder text = new StringBuilder();
+        private int rowIndex = -1;
+        private int col;
+        private String type;
+        private boolean hasValue;
+        private boolean hasFormula;
+        private boolean inValue;
+        private boolean inInline;
+        private boolean inInlineText;
+        private boolean inPhonetic;
+
+        private SheetHandler(SheetRowAssembler assembler) {
+            this.assembler = assembler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row": {
+                    String r = attributes.getValue("r");
+                    rowIndex = r == null ? rowIndex + 1 : Integer.parseInt(r) - 1;
+                    col = -1;
+                    assembler.startRow(rowIndex);
+                    break;
+                }
+                case "c": {
+                    String r = attributes.getValue("r");
+                    col = r == null ? col + 1 : columnIndex(r);
+                    type = attributes.getValue("t");
+                    hasValue = false;
+                    hasFormula = false;
+                    text.setLength(0);
+                    break;
+                }
+                case "v":
+                    inValue = true;
+                    break;
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "is":
+                    inInline = true;
+                    break;
+                case "rPh":
+                    inPhonetic = true;
+                    break;
+                case "t":
+                    inInlineText = inInline && !inPhonetic;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue || inInlineText) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                    inValue = false;
+                    hasValue = true;
+                    break;
+                case "t":
+                    inInlineText = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "is":
+                    inInline = false;
+                    hasValue = true;
+                    break;
+                case "c":
+                    assembler.cell(col, cellValue(), !hasFormula && !hasValue && (type == null || "n".equals(type)));
+                    break;
+                case "row":
+                    assembler.endRow();
+                    break;
+                default:
+            }
+        }
+
+        /**
+         * 单元格的值 和getStringCellValue一致
+         *
+         * @return
+         */
+        private String cellValue() {
+            if (hasFormula) {
+                return "";
+            }
+            if (type == null || "n".equals(type)) {
+                return hasValue ? String.valueOf(Double.parseDouble(text.toString().trim())) : "";
+            }
+            switch (type) {
+                case "s":
+                    return hasValue ? strings.getItemAt(Integer.parseInt(text.toString().trim())).getString().trim() : "";
+                case "inlineStr":
+                case "str":
+                    return text.toString().trim();
+                case "b":
+                    return hasValue && "1".equals(text.toString().trim()) ? "true" : "false";
+                default:
+                    return "";
+            }
+        }
+    }
+}
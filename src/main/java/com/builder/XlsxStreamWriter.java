@@ -0,0 +1,230 @@
+package com.builder;
+
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.util.WorkbookUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 不经过POI对象模型，直接把xlsx写入ZipOutputStream
+ * 工作表一个一个顺序写入(xl/worksheets/sheetN.xml)，写完一个工作表后内存中只保留工作表名称，
+ * 结束时再写入workbook.xml、styles.xml等固定部分；字符串使用inlineStr，不需要sharedStrings.xml
+ * 用法: newSheet -> XlsxSheetWriter写表头和行 -> closeSheet ... -> finish
+ */
+public class XlsxStreamWriter implements Closeable {
+
+    private final ZipOutputStream zip;
+    /**
+     * 工作表名称
+     */
+    private final List<String> sheetNames = new ArrayList<>();
+    /**
+     * 日期格式
+     */
+    private final String datePattern;
+    /**
+     * 主体单元格的水平对齐方式
+     */
+    private final HorizontalAlignment bodyAlignment;
+    private final int colWidth;
+    private final int rowHeight;
+    /**
+     * 是否按数据类型写入
+     */
+    private final boolean typed;
+    /**
+     * 当前正在写的工作表
+     */
+    private XlsxSheetWriter currentSheet;
+    private boolean finished;
+
+    /**
+     * @param out           输出流,finish后不会关闭,close时才关闭
+     * @param datePattern   日期格式
+     * @param bodyAlignment 主体单元格的水平对齐方式
+     * @param colWidth      单元格宽度
+     * @param rowHeight     单元格行高度
+     * @param typed         是否按数据类型写入
+     */
+    public XlsxStreamWriter(OutputStream out, String datePattern, HorizontalAlignment bodyAlignment,
+                            int colWidth, int rowHeight, boolean typed) {
+        this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        this.datePattern = datePattern;
+        this.bodyAlignment = bodyAlignment;
+        this.colWidth = colWidth;
+        this.rowHeight = rowHeight;
+        this.typed = typed;
+    }
+
+    /**
+     * 开始写入一个新的工作表
+     *
+     * @param sheetName 工作表名称
+     * @return
+     * @throws IOException
+     */
+    public XlsxSheetWriter newSheet(String sheetName) throws IOException {
+        if (currentSheet != null) {
+            closeSheet();
+        }
+        WorkbookUtil.validateSheetName(sheetName);
+        sheetNames.add(sheetName);
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        currentSheet = new XlsxSheetWriter(zip, colWidth, rowHeight, typed);
+        return currentSheet;
+    }
+
+    /**
+     * 添加一个已经生成好的工作表(XlsxSheetWriter写入文件的xml)，用于多线程分别生成工作表后再合并
+     *
+     * @param sheetName 工作表名称
+     * @param sheetPart 工作表xml文件
+     * @throws IOException
+     */
+    public void addSheet(String sheetName, File sheetPart) throws IOException {
+        if (currentSheet != null) {
+            closeSheet();
+        }
+        WorkbookUtil.validateSheetName(sheetName);
+        sheetNames.add(sheetName);
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        Files.copy(sheetPart.toPath(), zip);
+        zip.closeEntry();
+    }
+
+    /**
+     * 结束当前工作表
+     *
+     * @throws IOException
+     */
+    public void closeSheet() throws IOException {
+        if (currentSheet != null) {
+            currentSheet.finish();
+            zip.closeEntry();
+            currentSheet = null;
+        }
+    }
+
+    /**
+     * 写入workbook.xml、styles.xml等部分，结束zip但不关闭输出流
+     * 输出流由调用方关闭，可以直接写到servlet的response等
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        closeSheet();
+        writeEntry("[Content_Types].xml", contentTypes());
+        writeEntry("_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        writeEntry("xl/workbook.xml", workbook());
+        writeEntry("xl/_rels/workbook.xml.rels", workbookRels());
+        writeEntry("xl/styles.xml", styles());
+        zip.finish();
+        zip.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        zip.close();
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private String contentTypes() {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        sb.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+        sb.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+        sb.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        sb.append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+        sb.append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sb.append("<Override PartName=\"/xl/worksheets/sheet").append(i)
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        sb.append("</Types>");
+        return sb.toString();
+    }
+
+    private String workbook() {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        sb.append("<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" ");
+        sb.append("xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sb.append("<sheet name=\"").append(escape(sheetNames.get(i - 1))).append("\" sheetId=\"").append(i)
+                    .append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        sb.append("</sheets></workbook>");
+        return sb.toString();
+    }
+
+    private String workbookRels() {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        sb.append("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            sb.append("<Relationship Id=\"rId").append(i)
+                    .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+                    .append(i).append(".xml\"/>");
+        }
+        sb.append("<Relationship Id=\"rId").append(sheetNames.size() + 1)
+                .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>");
+        sb.append("</Relationships>");
+        return sb.toString();
+    }
+
+    /**
+     * 固定的样式表 下标和XlsxSheetWriter中的STYLE_*对应
+     *
+     * @return
+     */
+    private String styles() {
+        String align = bodyAlignment == HorizontalAlignment.LEFT ? "left" : "center";
+        String thin = "<color indexed=\"64\"/>";
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"" + escape(datePattern) + "\"/></numFmts>"
+                + "<fonts count=\"1\"><font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font></fonts>"
+                + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                + "<borders count=\"3\">"
+                + "<border><left/><right/><top/><bottom/><diagonal/></border>"
+                + "<border><left style=\"thin\">" + thin + "</left><right style=\"thin\">" + thin + "</right><top/>"
+                + "<bottom style=\"thin\">" + thin + "</bottom><diagonal/></border>"
+                + "<border><left/><right style=\"thin\">" + thin + "</right><top/><bottom style=\"thin\">" + thin + "</bottom><diagonal/></border>"
+                + "</borders>"
+                + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+                + "<cellXfs count=\"4\">"
+                + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+                + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyBorder=\"1\" applyAlignment=\"1\">"
+                + "<alignment horizontal=\"center\" vertical=\"center\"/></xf>"
+                + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"2\" xfId=\"0\" applyBorder=\"1\" applyAlignment=\"1\">"
+                + "<alignment horizontal=\"" + align + "\" vertical=\"center\"/></xf>"
+                + "<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"2\" xfId=\"0\" applyNumberFormat=\"1\" applyBorder=\"1\" applyAlignment=\"1\">"
+                + "<alignment horizontal=\"" + align + "\" vertical=\"center\"/></xf>"
+                + "</cellXfs>"
+                + "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+                + "</styleSheet>";
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}